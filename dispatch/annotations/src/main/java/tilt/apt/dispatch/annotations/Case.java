@@ -5,6 +5,94 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks the parameter of a method that handles one case of a @Switch. For a @Switch parameter of an
+ * enum, String or int type, which is switched on by value, the case lists the values it handles:
+ * enum constant names or strings in {@link #value()}, int values in {@link #ints()} and {@link
+ * #ranges()}. A value handled by two cases is reported at compile time.
+ *
+ * <p>A case with a {@link #limit()} runs at most that many calls at once. A call over the limit
+ * does not wait for a permit but is handled by the {@link #overflow()} policy, so that a slow case
+ * cannot take every thread of its callers. The limit applies to calls through the switch method,
+ * and its permits are shared by every instance of the switch class.
+ *
+ * <p>A case of a void switch method with a single parameter can {@link #coalesce()} its calls by
+ * key: a call adds the argument to a bounded map of pending arguments, where it replaces a pending
+ * one with the same key, and the case is called once per key when the {@link #windowMillis()} ends
+ * or {@link #maxPending()} keys are pending. Other cases are still called at once. At the end of a
+ * window the case is called on its {@link #executor()}, while a full map is passed to the case by
+ * the calling thread.
+ *
+ * <p>A {@link #hot()} case is tested first, by the exact class of the argument, in a switch method
+ * small enough to be inlined into its callers, which calls a separate method for the other cases.
+ */
 @Target(ElementType.PARAMETER)
 @Retention(RetentionPolicy.SOURCE)
-public @interface Case {}
+public @interface Case {
+  /** The names of enum constants, or the strings, handled by the case. */
+  String[] value() default {};
+
+  /** The int values handled by the case. */
+  int[] ints() default {};
+
+  /** The ranges of int values handled by the case. */
+  Range[] ranges() default {};
+
+  /** The number of calls of the case that run at once, or 0 for no limit. */
+  int limit() default 0;
+
+  /** What a call over the {@link #limit()} does. */
+  Overflow overflow() default Overflow.REJECT;
+
+  /**
+   * The name of the method that handles a call over the {@link #limit()} with {@link
+   * Overflow#FALLBACK}. It takes the same parameters as the case.
+   */
+  String fallback() default "";
+
+  /**
+   * The name of the method that returns the key of an argument of the case, to coalesce its calls.
+   * It takes the parameter of the case and is static for a static switch. Empty to call the case at
+   * once.
+   */
+  String coalesce() default "";
+
+  /** The time in milliseconds a coalescing case waits for more calls. */
+  long windowMillis() default 10;
+
+  /** The number of keys a coalescing case holds before it is called without waiting. */
+  int maxPending() default 1024;
+
+  /**
+   * The name of the method that returns the {@link java.util.concurrent.Executor} on which a
+   * coalescing case is called at the end of its window. It takes no parameters and is static for a
+   * static switch. Empty to use the common {@link java.util.concurrent.ForkJoinPool}.
+   */
+  String executor() default "";
+
+  /**
+   * True if the case is called often, to keep it in the inlined switch method. Only the exact class
+   * of its type, or the known subclasses of a closed hierarchy, take the hot path. Ignored by the
+   * VISITOR and VALUE strategies.
+   */
+  boolean hot() default false;
+
+  /** What a call of a case over its {@link #limit()} does. */
+  enum Overflow {
+    /** Throws a {@link java.util.concurrent.RejectedExecutionException}. */
+    REJECT,
+    /** Calls the {@link #fallback()} method instead of the case. */
+    FALLBACK,
+    /** Returns without calling the case and counts the call, for a void switch method. */
+    DROP
+  }
+
+  /** A range of int values, including both ends. */
+  @Target({})
+  @Retention(RetentionPolicy.SOURCE)
+  @interface Range {
+    int from();
+
+    int to();
+  }
+}
@@ -0,0 +1,34 @@
+package tilt.apt.dispatch.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code java.util.concurrent.Flow.Subscriber} for a method with a @Switch and no other
+ * parameters. The subscriber requests items in batches, groups each batch by @Case and calls the
+ * cases one group at a time, so the order of items is kept within a case but not across cases.
+ *
+ * <p>A batch is dispatched once it is full, or once its first item has waited {@link
+ * #maxDelayMillis()}, so that items of a publisher that goes idle are not held back. A partial
+ * batch is dispatched on the executor given to the constructor of the subscriber, the common {@code
+ * ForkJoinPool} by default, which the shared timer thread of {@code
+ * tilt.apt.dispatch.runtime.DispatchTimer} only hands it to. As many items as were dispatched are
+ * then requested again. The cases are never called concurrently.
+ *
+ * <p>Its {@code completion()} future completes when the publisher completes, or exceptionally when
+ * the publisher signals an error or a case throws, in which case the subscription is cancelled.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface FlowSubscriber {
+  /** The number of items requested at a time, unless given to the constructor. */
+  int batchSize() default 64;
+
+  /**
+   * The longest time the first item of a batch waits before a partial batch is dispatched, or 0 to
+   * dispatch only full batches and the last one on completion.
+   */
+  long maxDelayMillis() default 10;
+}
@@ -0,0 +1,38 @@
+package tilt.apt.dispatch.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the results of a method with a @Switch that is a pure function of its only argument, which
+ * must be of a reference type. The generated subclass implements {@code
+ * tilt.apt.dispatch.runtime.Memoized}, which exposes the hit and miss counts of the cache.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Memoize {
+  /** The number of results kept before an entry is evicted. */
+  int maximumSize() default 1024;
+
+  Key key() default Key.ARGUMENT;
+
+  Eviction eviction() default Eviction.CLEAR;
+
+  enum Key {
+    /** Caches by the argument, using its equals and hashCode. */
+    ARGUMENT,
+    /** Caches by the class of the argument. */
+    CLASS
+  }
+
+  enum Eviction {
+    /** Drops every result when the cache is full. */
+    CLEAR,
+    /** Drops an arbitrary result when the cache is full. */
+    ANY,
+    /** Stops caching new results when the cache is full. */
+    NONE
+  }
+}
@@ -0,0 +1,40 @@
+package tilt.apt.dispatch.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code _GeneratedPipeline} for a void method with a @Switch and no other parameters.
+ * Its {@code offer} and {@code publish} methods find the @Case of an argument and add the argument
+ * to a preallocated lock-free buffer of that case, which a consumer thread drains in batches into
+ * the case, so that producers do not wait for slow cases. An argument without a case is dropped, as
+ * the switch method would ignore it.
+ *
+ * <p>The buffers are split into stripes, each with a consumer thread of its own. Arguments of a
+ * case with the same key, or published by the same thread if there is no key method, share a stripe
+ * and are consumed in the order they were published. The consumer threads are daemon threads,
+ * unless a thread factory is given to the constructor. An argument whose case throws is counted as
+ * a failure and its exception passed to the uncaught exception handler of the consumer, which goes
+ * on with the rest of the batch. The depth, drain, rejection and failure counts are available from
+ * {@code pipeline()}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Pipeline {
+  /** The number of arguments each buffer holds, a power of two. */
+  int capacity() default 1024;
+
+  /** The largest number of arguments passed to a case in one batch. */
+  int batchSize() default 64;
+
+  /** The number of stripes and consumer threads. */
+  int stripes() default 1;
+
+  /**
+   * The name of a method of the switch class that takes the argument and returns its key, static
+   * for a static switch. Empty to stripe by publishing thread.
+   */
+  String key() default "";
+}
@@ -7,4 +7,132 @@ import java.lang.annotation.Target;
 
 @Target(ElementType.PARAMETER)
 @Retention(RetentionPolicy.SOURCE)
-public @interface Switch {}
+public @interface Switch {
+  /**
+   * Controls whether a shared {@code instance()} accessor is generated next to {@code
+   * newInstance()}.
+   */
+  Singleton singleton() default Singleton.AUTO;
+
+  /**
+   * Selects how the generated subclass finds the @Case for an argument. Run the processor with the
+   * debug option to see which strategy is chosen by {@link Strategy#AUTO} and why.
+   */
+  Strategy strategy() default Strategy.AUTO;
+
+  /**
+   * Generates a static {@code warmUp()} that loads every case type, resolves it in the constant
+   * pool of the generated class and fills any dispatch table, so that the first call does not pay
+   * for it. A switch with a single parameter also gets an overload taking samples and a number of
+   * iterations, which calls the switch with each sample so that its profile and compiled code exist
+   * before the first real call. Call either from a startup hook, or during a class data sharing
+   * training run to have the case types archived.
+   */
+  boolean warmUp() default false;
+
+  /**
+   * Generates a {@code _GeneratedExtension} interface whose implementations handle the types that
+   * no @Case takes, for plugins compiled after the switch. Implementations are found by a {@link
+   * java.util.ServiceLoader} when the switch is first used, which needs a {@code uses} clause in a
+   * named module, or added through its static {@code register} method. The @Case methods always
+   * come first, and among the extensions the one of the most specific type wins.
+   *
+   * <p>Needs a switch method and class without type parameters, and is not supported by the {@link
+   * Strategy#VISITOR} and {@link Strategy#VALUE} strategies.
+   */
+  boolean extensible() default false;
+
+  /**
+   * Generates a {@code _GeneratedHandle<A>} interface with the signature of the switch method,
+   * whose static {@code resolve} returns the handle for a class A. The handle calls the @Case of A
+   * without testing the argument, so a caller that knows the class of its arguments resolves it
+   * once outside of its loop. The handles are created once per dispatcher. A class without a case,
+   * or a memoized switch, resolves to a handle calling the switch method.
+   *
+   * <p>Needs a switch method and class without type parameters and a parameter that is neither an
+   * enum, String or int nor a {@code Class}.
+   */
+  boolean handles() default false;
+
+  /**
+   * Classes whose static {@code before}, {@code after} and {@code onError} hooks are called around
+   * each @Case by the switch method, for tracing, checks or timing without a proxy. The hooks of a
+   * case are those that take its type, so an interceptor can overload them per case type:
+   *
+   * <ul>
+   *   <li>{@code before(A argument)} is called before the case, in the order of the interceptors.
+   *   <li>{@code after(A argument, R result)}, or {@code after(A argument)} for a void switch, is
+   *       called after the case returns, in reverse order.
+   *   <li>{@code onError(A argument, Throwable error)} is called in reverse order when the case
+   *       throws, which is then rethrown.
+   * </ul>
+   *
+   * <p>Hooks must not declare checked exceptions. They are not supported by the {@link
+   * Strategy#VISITOR} strategy, and do not apply to calls that bypass the switch method, such as
+   * those of a {@code FlowSubscriber}, a {@code Pipeline} or a coalescing case.
+   */
+  Class<?>[] interceptors() default {};
+
+  enum Singleton {
+    /**
+     * Shares an instance only if the class has no instance fields and a no-arg constructor, and
+     * extends its generated superclass.
+     */
+    AUTO,
+    /**
+     * Always shares an instance, reporting an error if the class is not stateless or does not
+     * extend its generated superclass.
+     */
+    ALWAYS,
+    /** Never shares an instance. */
+    NEVER
+  }
+
+  enum Strategy {
+    /**
+     * Chooses a strategy from the number of cases, the kinds of case types, the shape of the case
+     * hierarchy and the target release. Never chooses {@link #VISITOR}, always chooses {@link
+     * #VALUE} for a parameter of an enum, String or int type and {@link #CLASS_VALUE} for a {@code
+     * Class} parameter. Chooses {@link #EXACT_CLASS} for more than a few cases when the classes of
+     * the parameter type are all known at compile time.
+     */
+    AUTO,
+    /** Tests the argument against each case type in turn. */
+    INSTANCEOF,
+    /**
+     * Caches the index of the case for each runtime class in a {@link ClassValue} and switches on
+     * it. A {@code Class} parameter is switched on as a type token: a @Case taking {@code Class<A>}
+     * matches a token for A or any subtype of it, the most specific case winning. Of two cases of
+     * unrelated types, the one declared first wins, which is reported as a lint when a class could
+     * be a subtype of both.
+     */
+    CLASS_VALUE,
+    /**
+     * Compares the class of the argument with a table of classes and their cases worked out at
+     * compile time, without any lazy lookup. Needs a parameter type whose subclasses are all known
+     * at compile time: a final or sealed type, or one that is neither public nor protected, whose
+     * subclasses are all in its package. A class missing from the table, such as an anonymous
+     * class, falls back to the lookup of {@link #CLASS_VALUE}.
+     */
+    EXACT_CLASS,
+    /**
+     * Calls {@code accept(visitor, ...)} on the argument. The case types implement it by calling
+     * back the matching {@code visitX} method of the generated {@code _GeneratedVisitor} interface,
+     * which the generated subclass routes to the @Case methods.
+     */
+    VISITOR,
+    /**
+     * Switches on {@code dispatchId()} of the argument with a single tableswitch. The case types
+     * implement the generated {@code _GeneratedDispatchId} interface, which holds a dense id for
+     * each @Case, and return the id of their case. Chosen by {@link #AUTO} when every case type
+     * implements it. If the type of the parameter does not implement it too, every call tests and
+     * casts the argument before it reads the id, which is reported as a lint.
+     */
+    DISPATCH_ID,
+    /**
+     * Switches on the value of an enum, String or int argument, using the values listed by each
+     * {@link Case}. Int ranges of more than a few values are found by a binary search.
+     */
+    VALUE
+  }
+}
@@ -1,5 +1,9 @@
 package tilt.apt.dispatch.processor;
 
+import static java.util.Optional.ofNullable;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.getExistingSuperclass;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -58,6 +62,71 @@ final class AnnotatedClass {
     return getClassSimpleName() + DispatchProcessor.SUFFIX_SUBCLASS;
   }
 
+  String getBinaryName() {
+    return elements.getBinaryName(typeElement).toString();
+  }
+
+  String getGeneratedDispatcherSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_DISPATCHER;
+  }
+
+  String getGeneratedVisitorSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_VISITOR;
+  }
+
+  String getGeneratedDispatchIdSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_DISPATCH_ID;
+  }
+
+  String getGeneratedFlowSubscriberSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_FLOW_SUBSCRIBER;
+  }
+
+  String getGeneratedPipelineSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_PIPELINE;
+  }
+
+  String getGeneratedHandleSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_HANDLE;
+  }
+
+  String getGeneratedExtensionSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_EXTENSION;
+  }
+
+  String getGeneratedCaseIndexSimpleName() {
+    return getClassSimpleName() + DispatchProcessor.SUFFIX_CASE_INDEX;
+  }
+
+  String getGeneratedCaseIndexBinaryName() {
+    return getGeneratedBinaryName(DispatchProcessor.SUFFIX_CASE_INDEX);
+  }
+
+  boolean isPublic() {
+    return typeElement.getModifiers().contains(Modifier.PUBLIC);
+  }
+
+  String getGeneratedSuperclassBinaryName() {
+    return getGeneratedBinaryName(DispatchProcessor.SUFFIX_SUPERCLASS);
+  }
+
+  String getGeneratedSubclassBinaryName() {
+    return getGeneratedBinaryName(DispatchProcessor.SUFFIX_SUBCLASS);
+  }
+
+  /** Returns the binary name of the class that implements the switch of the block. */
+  String getGeneratedSwitchBinaryName(final SwitchBlock block) {
+    return getGeneratedBinaryName(
+        block.isStatic() ? DispatchProcessor.SUFFIX_DISPATCHER : DispatchProcessor.SUFFIX_SUBCLASS);
+  }
+
+  private String getGeneratedBinaryName(final String suffix) {
+    final PackageElement packageElement = elements.getPackageOf(typeElement);
+    return (packageElement.isUnnamed() ? "" : packageElement.getQualifiedName() + ".")
+        + getClassSimpleName()
+        + suffix;
+  }
+
   private String getClassSimpleName() {
     String name = elements.getBinaryName(typeElement).toString();
     final int lastIndex = name.lastIndexOf('.');
@@ -105,6 +174,35 @@ final class AnnotatedClass {
     return constructors;
   }
 
+  /**
+   * Returns an accessible constructor that takes no arguments, declares no type parameters and
+   * throws no checked exceptions, or null if there is none.
+   */
+  ExecutableElement getNoArgConstructor() {
+    for (final ExecutableElement constructor : getAccessibleConstructors()) {
+      if (constructor.getParameters().isEmpty()
+          && constructor.getTypeParameters().isEmpty()
+          && constructor.getThrownTypes().isEmpty()) {
+        return constructor;
+      }
+    }
+    return null;
+  }
+
+  /** Returns true if this class or any of its existing superclasses declares a non-static field. */
+  boolean hasInstanceFields() {
+    for (TypeElement it = typeElement;
+        it != null;
+        it = ofNullable(getExistingSuperclass(it)).map(t -> asTypeElement(t)).orElse(null)) {
+      for (final VariableElement field : ElementFilter.fieldsIn(it.getEnclosedElements())) {
+        if (field.getModifiers().contains(Modifier.STATIC) == false) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   void startBlock(Appendable w) throws IOException {
     w.append(" {\n");
   }
@@ -137,6 +235,47 @@ final class AnnotatedClass {
         .collect(Collectors.joining(", ", "(", ")"));
   }
 
+  /** Formats the declaration of a method, up to and excluding its body. */
+  String formatMethodDecl(
+      final ExecutableElement method, final UnaryOperator<Stream<Modifier>> modifiers) {
+    return formatMethodDecl(method, modifiers, method.getSimpleName().toString());
+  }
+
+  /** Formats the declaration of a method under another name, up to and excluding its body. */
+  String formatMethodDecl(
+      final ExecutableElement method,
+      final UnaryOperator<Stream<Modifier>> modifiers,
+      final String name) {
+    return formatMethodDecl(method, modifiers, name, "");
+  }
+
+  /**
+   * Formats the declaration of a method under another name and with extra leading parameters, up to
+   * and excluding its body.
+   */
+  String formatMethodDecl(
+      final ExecutableElement method,
+      final UnaryOperator<Stream<Modifier>> modifiers,
+      final String name,
+      final String leadingParameters) {
+    final String parameters = formatMethodParameters(method);
+    return wrapIfNonBlank(formatModifiers(method.getModifiers(), modifiers), "", " ")
+        + wrapIfNonBlank(
+            formatTypeParameterElements(method.getTypeParameters(), TypeParameterName.INSTANCE),
+            "",
+            " ")
+        + String.format(
+            "%s %s",
+            method.getReturnType().accept(TypeArgumentName.INSTANCE, new AppendableString()), name)
+        + (leadingParameters.isEmpty()
+            ? parameters
+            : "("
+                + leadingParameters
+                + (parameters.equals("()") ? "" : ", ")
+                + parameters.substring(1))
+        + wrapIfNonBlank(formatMethodThrows(method), " ", "");
+  }
+
   String formatMethodThrows(final ExecutableElement executableElement) {
     if (executableElement.getThrownTypes().isEmpty()) {
       return "";
@@ -168,6 +307,11 @@ final class AnnotatedClass {
         .toString();
   }
 
+  /** Returns a constant value as a Java literal. */
+  String formatConstant(final Object value) {
+    return elements.getConstantExpression(value);
+  }
+
   static String formatStatement(final String statement) {
     return statement + ";\n";
   }
@@ -0,0 +1,30 @@
+package tilt.apt.dispatch.processor;
+
+import javax.lang.model.type.TypeKind;
+
+/** The int values, including both ends, handled by a @Case of a switch on ints. */
+final class CaseRange {
+  final long from;
+  final long to;
+  final ParameterInMethod caseParameter;
+
+  CaseRange(final long from, final long to, final ParameterInMethod caseParameter) {
+    this.from = from;
+    this.to = to;
+    this.caseParameter = caseParameter;
+  }
+
+  /** Returns true if every value of the range fits the type of the switch. */
+  boolean isWithin(final TypeKind kind) {
+    switch (kind) {
+      case BYTE:
+        return from >= Byte.MIN_VALUE && to <= Byte.MAX_VALUE;
+      case SHORT:
+        return from >= Short.MIN_VALUE && to <= Short.MAX_VALUE;
+      case CHAR:
+        return from >= Character.MIN_VALUE && to <= Character.MAX_VALUE;
+      default:
+        return true;
+    }
+  }
+}
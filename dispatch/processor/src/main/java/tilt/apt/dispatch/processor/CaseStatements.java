@@ -0,0 +1,238 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.util.stream.Collectors;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeKind;
+import tilt.apt.dispatch.annotations.Case;
+
+/** Formats the statements that call a @Case from the switch method. */
+final class CaseStatements {
+  static final String FIELD_EXTENSIONS = "EXTENSIONS";
+
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+  private final LimitedCases limits;
+  private final CoalescingCases coalescing;
+
+  public CaseStatements(final SwitchBlock block) {
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+    this.limits = new LimitedCases(block);
+    this.coalescing = new CoalescingCases(block);
+  }
+
+  boolean isVoid() {
+    return method.getReturnType().getKind() == TypeKind.VOID;
+  }
+
+  /**
+   * Returns true if the statement of every case returns. The cases of a void extensible switch
+   * return, so that only an argument without a case reaches the extensions.
+   */
+  boolean isReturning() {
+    return isVoid() == false || block.getExtensionName() != null;
+  }
+
+  /**
+   * Returns the call of the case method, casting the switch argument to the case type unless the
+   * switch is on values. A Class token is cast through {@code Class<?>}, which is unchecked.
+   */
+  String formatCall(final ParameterInMethod caseParameter) {
+    return formatCall(caseParameter, caseParameter.getMethodName());
+  }
+
+  private String formatCall(final ParameterInMethod caseParameter, final CharSequence methodName) {
+    return String.format(
+        "%s%s(%s)",
+        block.isStatic() ? caseParameter.getTypeElement().getQualifiedName() + "." : "",
+        methodName,
+        method
+            .getParameters()
+            .stream()
+            .map(
+                it ->
+                    it.getSimpleName().equals(block.getSwitchParameterName())
+                            && block.isValueSwitch() == false
+                        ? formatCast(caseParameter, it.getSimpleName().toString())
+                        : it.getSimpleName())
+            .map(Object::toString)
+            .collect(Collectors.joining(", ")));
+  }
+
+  private String formatCast(final ParameterInMethod caseParameter, final String argument) {
+    if (block.isClassTokenSwitch()) {
+      return String.format(
+          "(%s) (Class<?>) %s",
+          caseParameter
+              .variableElement
+              .asType()
+              .accept(TypeArgumentName.INSTANCE, new AppendableString()),
+          argument);
+    }
+    return String.format("(%s) %s", caseParameter.getParameterTypeName(), argument);
+  }
+
+  /** Returns the statement that calls the case and returns its result, if any. */
+  String formatCaseStatement(final ParameterInMethod caseParameter) {
+    final String call = formatCall(caseParameter);
+    final String coalescer = coalescing.formatCoalescer(caseParameter);
+    if (coalescer != null) {
+      final String key =
+          formatCall(
+              caseParameter, caseParameter.variableElement.getAnnotation(Case.class).coalesce());
+      return formatStatement(
+              String.format("%s.submit(%s, %s)", coalescer, key, block.getSwitchParameterName()))
+          + (isReturning() ? formatStatement("return") : "");
+    }
+    final String limit = limits.formatLimit(caseParameter);
+    if (limit != null) {
+      return formatLimitedStatement(caseParameter, call, limit);
+    }
+    if (isVoid()) {
+      return formatCallStatements(caseParameter, call)
+          + (isReturning() ? formatStatement("return") : "");
+    }
+    return formatCallStatements(caseParameter, call);
+  }
+
+  /**
+   * Returns the statements that call the case, returning its result if any, between the hooks of
+   * the interceptors of the switch. They are in a block, so that their locals are not shared by the
+   * labels of a switch.
+   */
+  private String formatCallStatements(final ParameterInMethod caseParameter, final String call) {
+    final Interceptors.Hooks hooks =
+        block.getInterceptors() == null
+            ? Interceptors.Hooks.NONE
+            : block.getInterceptors().get(caseParameter);
+    if (hooks.isEmpty()) {
+      return formatStatement(isVoid() ? call : "return " + call);
+    }
+    final String argument =
+        block.isValueSwitch()
+            ? block.getSwitchParameterName().toString()
+            : formatCast(caseParameter, block.getSwitchParameterName().toString());
+    final StringBuilder s = new StringBuilder("{\n");
+    for (final String interceptor : hooks.before) {
+      s.append(
+          formatStatement(
+              String.format("%s.%s(%s)", interceptor, Interceptors.HOOK_BEFORE, argument)));
+    }
+    final String result = isVoid() ? "" : "caseResult = ";
+    if (hooks.onError.isEmpty()) {
+      s.append(
+          formatStatement(
+              (isVoid() ? "" : "final " + method.getReturnType() + " ") + result + call));
+    } else {
+      if (isVoid() == false) {
+        s.append(formatStatement("final " + method.getReturnType() + " caseResult"));
+      }
+      s.append("try {\n");
+      s.append(formatStatement(result + call));
+      s.append("} catch (final Throwable caseError) {\n");
+      for (final String interceptor : hooks.onError) {
+        s.append(
+            formatStatement(
+                String.format(
+                    "%s.%s(%s, caseError)", interceptor, Interceptors.HOOK_ON_ERROR, argument)));
+      }
+      s.append(formatStatement("throw caseError"));
+      s.append("}\n");
+    }
+    for (final String interceptor : hooks.after) {
+      s.append(
+          formatStatement(
+              String.format(
+                  "%s.%s(%s%s)",
+                  interceptor, Interceptors.HOOK_AFTER, argument, isVoid() ? "" : ", caseResult")));
+    }
+    if (isVoid() == false) {
+      s.append(formatStatement("return caseResult"));
+    }
+    return s.append("}\n").toString();
+  }
+
+  /**
+   * Returns the statement that calls a case with a limit while it holds a permit, and handles the
+   * call by the overflow policy of the case without one.
+   */
+  private String formatLimitedStatement(
+      final ParameterInMethod caseParameter, final String call, final String limit) {
+    final Case annotation = caseParameter.variableElement.getAnnotation(Case.class);
+    final StringBuilder s = new StringBuilder();
+    s.append(String.format("if (%s.tryAcquire()) {\n", limit));
+    s.append("try {\n");
+    s.append(formatCallStatements(caseParameter, call));
+    s.append("} finally {\n");
+    s.append(formatStatement(limit + ".release()"));
+    s.append("}\n");
+    if (annotation.overflow() == Case.Overflow.DROP) {
+      s.append("}\n");
+    } else {
+      s.append(isVoid() ? "} else {\n" : "}\n");
+      s.append(formatOverflow(caseParameter, annotation));
+      s.append(isVoid() ? "}\n" : "");
+    }
+    if (isVoid() && isReturning()) {
+      s.append(formatStatement("return"));
+    }
+    return s.toString();
+  }
+
+  private String formatOverflow(final ParameterInMethod caseParameter, final Case annotation) {
+    if (annotation.overflow() == Case.Overflow.FALLBACK) {
+      final String fallback = formatCall(caseParameter, annotation.fallback());
+      return formatStatement(isVoid() ? fallback : "return " + fallback);
+    }
+    return formatStatement(
+        String.format(
+            "throw new java.util.concurrent.RejectedExecutionException(\"Limit of %s reached for"
+                + " \" + %s)",
+            LimitedCases.formatCaseName(caseParameter), block.getSwitchParameterName()));
+  }
+
+  /**
+   * Returns the statements that end a switch method for an argument without a case, which call the
+   * extension for its class, if any.
+   */
+  String formatNoCase() {
+    return formatExtensionCall() + (isVoid() ? "" : formatNoCaseThrow());
+  }
+
+  private String formatExtensionCall() {
+    if (block.getExtensionName() == null) {
+      return "";
+    }
+    final String argument = block.getSwitchParameterName().toString();
+    final String call =
+        String.format(
+            "extension.%s(%s)",
+            method.getSimpleName(),
+            method
+                .getParameters()
+                .stream()
+                .map(it -> it.getSimpleName().toString())
+                .collect(Collectors.joining(", ")));
+    return formatStatement(
+            String.format(
+                "final %s extension = %s == null ? null : %s.find(%s)",
+                block.getExtensionName(),
+                argument,
+                FIELD_EXTENSIONS,
+                block.isClassTokenSwitch() ? argument : argument + ".getClass()"))
+        + "if (extension != null) {\n"
+        + (isVoid()
+            ? formatStatement(call) + formatStatement("return")
+            : formatStatement("return " + call))
+        + "}\n";
+  }
+
+  private String formatNoCaseThrow() {
+    return formatStatement(
+        String.format(
+            "throw new IllegalArgumentException(\"No @Case for \" + %s)",
+            block.getSwitchParameterName()));
+  }
+}
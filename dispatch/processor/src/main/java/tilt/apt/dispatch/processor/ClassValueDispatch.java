@@ -0,0 +1,102 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+
+/**
+ * Resolves the index of the case for the class of the argument, or for a Class token argument,
+ * once, caches it in a {@link ClassValue} and switches on the index.
+ */
+final class ClassValueDispatch implements DispatchStrategy {
+  static final String FIELD_CASE_INDEX = "CASE_INDEX";
+
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public ClassValueDispatch(final SwitchBlock block) {
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendMembers(Appendable w) throws IOException {
+    appendCaseIndexField(w, block);
+  }
+
+  /**
+   * Appends the {@link ClassValue} that maps a class to the index of its case, or -1, unless the
+   * switch shares the one of a {@link GeneratedCaseIndex}.
+   */
+  static void appendCaseIndexField(Appendable w, final SwitchBlock block) throws IOException {
+    if (block.getCaseIndexHolder() == null) {
+      appendCaseIndexField(w, block, "private static final");
+    }
+  }
+
+  static void appendCaseIndexField(Appendable w, final SwitchBlock block, final String modifiers)
+      throws IOException {
+    w.append(
+        String.format(
+            "%s ClassValue<Integer> %s = new ClassValue<Integer>()", modifiers, FIELD_CASE_INDEX));
+    w.append(" {\n@Override\nprotected Integer computeValue(Class<?> type)");
+    w.append(" {\n");
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(
+          String.format(
+              "if (%s.class.isAssignableFrom(type)) {\n%s}\n",
+              block.getCaseTypeName(caseParameter), formatStatement("return " + index++)));
+    }
+    w.append(formatStatement("return -1"));
+    w.append("}\n");
+    w.append(formatStatement("}"));
+  }
+
+  /** Returns the reference to the {@link ClassValue} of the switch. */
+  static String formatCaseIndexField(final SwitchBlock block) {
+    return block.getCaseIndexHolder() == null
+        ? FIELD_CASE_INDEX
+        : block.getCaseIndexHolder() + "." + FIELD_CASE_INDEX;
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    appendSwitch(w, block, statements, formatCaseIndex(block));
+  }
+
+  /** Appends a switch over the index of the case, given by the expression, of the argument. */
+  static void appendSwitch(
+      Appendable w,
+      final SwitchBlock block,
+      final CaseStatements statements,
+      final String caseIndex)
+      throws IOException {
+    w.append(String.format("switch (%s) {\n", caseIndex));
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(String.format("case %d:\n", index++));
+      w.append(statements.formatCaseStatement(caseParameter));
+      if (statements.isReturning() == false) {
+        w.append(formatStatement("break"));
+      }
+    }
+    w.append("}\n");
+    w.append(statements.formatNoCase());
+  }
+
+  /** Returns the expression that looks up the index of the case for the switch argument. */
+  static String formatCaseIndex(final SwitchBlock block) {
+    return String.format(
+        block.isClassTokenSwitch()
+            ? "%1$s == null ? -1 : %2$s.get(%1$s)"
+            : "%1$s == null ? -1 : %2$s.get(%1$s.getClass())",
+        block.getSwitchParameterName(),
+        formatCaseIndexField(block));
+  }
+
+  @Override
+  public boolean hasStaticState() {
+    return block.getCaseIndexHolder() == null;
+  }
+}
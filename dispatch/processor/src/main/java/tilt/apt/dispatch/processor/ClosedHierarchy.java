@@ -0,0 +1,150 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.SafeOperations.isAbstractElement;
+import static tilt.apt.dispatch.processor.SafeOperations.isPrivateElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.getPermittedSubclasses;
+import static tilt.apt.dispatch.processor.UnsafeOperations.isSealed;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Finds every concrete class of a switch type whose subclasses are all known at compile time: the
+ * permitted subclasses of a sealed type, followed down to final classes, or the classes of the
+ * package of a type that is neither public nor protected. Anonymous and local classes are never
+ * found, and are left to the fallback of {@link ExactClassDispatch}.
+ */
+final class ClosedHierarchy {
+  private final Elements elements;
+  private final Types types;
+
+  public ClosedHierarchy(final Elements elements, final Types types) {
+    this.elements = elements;
+    this.types = types;
+  }
+
+  /**
+   * Returns the classes a switch argument can have with the index of the case of each, or null if a
+   * subclass of the switch type may be unknown. Classes that the generated class cannot name are
+   * left out.
+   */
+  List<ExactClassDispatch.ExactClass> findExactClasses(final SwitchBlock block) {
+    final TypeElement root = asTypeElement(block.getSwitchParameterElement().asType());
+    if (root == null) {
+      return null;
+    }
+    final Set<TypeElement> classes = new LinkedHashSet<>();
+    if (isConcrete(root)) {
+      classes.add(root);
+    }
+    final Set<Modifier> modifiers = root.getModifiers();
+    if (modifiers.contains(Modifier.FINAL) == false) {
+      if (isSealed(root)) {
+        if (addPermittedSubclasses(root, classes) == false) {
+          return null;
+        }
+      } else if (modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED)) {
+        return null;
+      } else {
+        addPackageSubclasses(
+            elements.getPackageOf(root).getEnclosedElements(),
+            types.erasure(root.asType()),
+            classes);
+      }
+    }
+    final PackageElement packageElement = elements.getPackageOf(block.typeElement);
+    final List<ExactClassDispatch.ExactClass> exactClasses = new ArrayList<>();
+    for (final TypeElement typeElement : classes) {
+      if (isAccessible(typeElement, packageElement)) {
+        exactClasses.add(
+            new ExactClassDispatch.ExactClass(
+                typeElement.getQualifiedName().toString(),
+                elements.getBinaryName(typeElement).toString(),
+                findCaseIndex(block, typeElement)));
+      }
+    }
+    return exactClasses;
+  }
+
+  /**
+   * Adds the concrete permitted subclasses of a sealed type and of its sealed subtypes, returning
+   * false if one of them is neither sealed nor final.
+   */
+  private boolean addPermittedSubclasses(final TypeElement sealed, final Set<TypeElement> classes) {
+    for (final TypeMirror permitted : getPermittedSubclasses(sealed)) {
+      final TypeElement typeElement = asTypeElement(permitted);
+      if (typeElement == null) {
+        return false;
+      }
+      if (isConcrete(typeElement)) {
+        classes.add(typeElement);
+      }
+      if (isSealed(typeElement)) {
+        if (addPermittedSubclasses(typeElement, classes) == false) {
+          return false;
+        }
+      } else if (typeElement.getModifiers().contains(Modifier.FINAL) == false
+          && typeElement.getKind() != ElementKind.ENUM
+          && typeElement.getKind().name().equals("RECORD") == false) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Adds the concrete subclasses among the types and their member types. */
+  private void addPackageSubclasses(
+      final List<? extends Element> members,
+      final TypeMirror root,
+      final Set<TypeElement> classes) {
+    for (final TypeElement typeElement : ElementFilter.typesIn(members)) {
+      if (isConcrete(typeElement) && types.isSubtype(types.erasure(typeElement.asType()), root)) {
+        classes.add(typeElement);
+      }
+      addPackageSubclasses(typeElement.getEnclosedElements(), root, classes);
+    }
+  }
+
+  /** Returns the index of the first case that takes the class, or -1. */
+  private int findCaseIndex(final SwitchBlock block, final TypeElement typeElement) {
+    final TypeMirror type = types.erasure(typeElement.asType());
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      if (types.isSubtype(type, types.erasure(block.getCaseType(caseParameter)))) {
+        return index;
+      }
+      index++;
+    }
+    return -1;
+  }
+
+  static boolean isConcrete(final TypeElement typeElement) {
+    return typeElement.getKind() != ElementKind.INTERFACE
+        && typeElement.getKind() != ElementKind.ANNOTATION_TYPE
+        && isAbstractElement(typeElement) == false;
+  }
+
+  /** Returns true if code in the package can name the class in a class literal. */
+  private boolean isAccessible(final TypeElement typeElement, final PackageElement packageElement) {
+    final boolean samePackage = elements.getPackageOf(typeElement).equals(packageElement);
+    for (Element e = typeElement; e instanceof TypeElement; e = e.getEnclosingElement()) {
+      if (isPrivateElement(e)
+          || (samePackage == false && e.getModifiers().contains(Modifier.PUBLIC) == false)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,105 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import tilt.apt.dispatch.annotations.Case;
+import tilt.apt.dispatch.runtime.CaseCoalesced;
+import tilt.apt.dispatch.runtime.Coalescer;
+
+/**
+ * The {@link Coalescer} of every @Case with {@link Case#coalesce()}, in an array of the generated
+ * subclass or dispatcher. The switch method submits the argument with its key instead of calling
+ * the case, and the coalescer calls the case through a lambda once the window ends, on the executor
+ * returned by the {@link Case#executor()} method if the case names one.
+ */
+final class CoalescingCases {
+  static final String FIELD_COALESCERS = "coalescers";
+  static final String FIELD_STATIC_COALESCERS = "COALESCERS";
+  static final String METHOD_COALESCERS = "coalescers";
+
+  private final SwitchBlock block;
+  private final List<ParameterInMethod> coalescing = new ArrayList<>();
+
+  public CoalescingCases(final SwitchBlock block) {
+    this.block = block;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      if (isCoalescing(caseParameter)) {
+        coalescing.add(caseParameter);
+      }
+    }
+  }
+
+  static boolean isCoalescing(final ParameterInMethod caseParameter) {
+    return caseParameter.variableElement.getAnnotation(Case.class).coalesce().isEmpty() == false;
+  }
+
+  static String formatInterfaceName() {
+    return CaseCoalesced.class.getName();
+  }
+
+  boolean isEmpty() {
+    return coalescing.isEmpty();
+  }
+
+  /** Returns the coalescer of the case in the array of coalescers, or null if it has none. */
+  String formatCoalescer(final ParameterInMethod caseParameter) {
+    final int index = coalescing.indexOf(caseParameter);
+    return index < 0 ? null : String.format("%s[%d]", formatCoalescersField(), index);
+  }
+
+  /** Appends the array of coalescers and the method that lists them. */
+  void appendMembers(Appendable w) throws IOException {
+    final CaseStatements statements = new CaseStatements(block);
+    final String argument = block.getSwitchParameterName().toString();
+    final List<String> coalescers = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : coalescing) {
+      final Case annotation = caseParameter.variableElement.getAnnotation(Case.class);
+      coalescers.add(
+          String.format(
+              "new %s(\"%s\", %dL, %d, %s -> %s%s)",
+              Coalescer.class.getName(),
+              LimitedCases.formatCaseName(caseParameter),
+              annotation.windowMillis(),
+              annotation.maxPending(),
+              argument,
+              statements.formatCall(caseParameter),
+              annotation.executor().isEmpty()
+                  ? ""
+                  : String.format(
+                      ", %s%s()",
+                      block.isStatic()
+                          ? caseParameter.getTypeElement().getQualifiedName() + "."
+                          : "",
+                      annotation.executor())));
+    }
+    w.append(
+        formatStatement(
+            String.format(
+                "private %sfinal %s[] %s = {%s}",
+                block.isStatic() ? "static " : "",
+                Coalescer.class.getName(),
+                formatCoalescersField(),
+                String.join(", ", coalescers))));
+    if (block.isStatic() == false) {
+      w.append("@Override\npublic ");
+    } else {
+      w.append("static ");
+    }
+    w.append(
+        String.format("java.util.List<%s> %s()", Coalescer.class.getName(), METHOD_COALESCERS));
+    w.append(" {\n");
+    w.append(
+        formatStatement(
+            String.format(
+                "return java.util.Collections.unmodifiableList(java.util.Arrays.asList(%s))",
+                formatCoalescersField())));
+    w.append("}\n");
+  }
+
+  private String formatCoalescersField() {
+    return block.isStatic() ? FIELD_STATIC_COALESCERS : FIELD_COALESCERS;
+  }
+}
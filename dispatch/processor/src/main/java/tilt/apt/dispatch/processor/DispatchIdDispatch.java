@@ -0,0 +1,60 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.hasSupertypeNamed;
+
+import java.io.IOException;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Switches on the id that the argument returns from {@code dispatchId()}. The id, not the order of
+ * the cases, picks the case, so a subclass of a case type dispatches to the case whose id it
+ * returns.
+ */
+final class DispatchIdDispatch implements DispatchStrategy {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public DispatchIdDispatch(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    w.append(String.format("switch (%s) {\n", formatCaseIndex(ac, block)));
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(
+          String.format(
+              "case %s.%s:\n",
+              ac.getGeneratedDispatchIdSimpleName(), block.getDispatchIdName(caseParameter)));
+      w.append(statements.formatCaseStatement(caseParameter));
+      if (statements.isReturning() == false) {
+        w.append(formatStatement("break"));
+      }
+    }
+    w.append("}\n");
+    w.append(statements.formatNoCase());
+  }
+
+  /**
+   * Returns the expression that reads the id of the switch argument, or -1 for null. If the type of
+   * the switch parameter does not implement the generated interface, the argument is tested for it
+   * first.
+   */
+  static String formatCaseIndex(final AnnotatedClass ac, final SwitchBlock block) {
+    final String name = ac.getGeneratedDispatchIdSimpleName();
+    final TypeElement switchTypeElement = asTypeElement(block.getSwitchParameterElement().asType());
+    if (switchTypeElement != null && hasSupertypeNamed(switchTypeElement, name)) {
+      return String.format(
+          "%1$s == null ? -1 : %1$s.%2$s()",
+          block.getSwitchParameterName(), GeneratedDispatchId.METHOD_DISPATCH_ID);
+    }
+    return String.format(
+        "%1$s instanceof %2$s ? ((%2$s) %1$s).%3$s() : -1",
+        block.getSwitchParameterName(), name, GeneratedDispatchId.METHOD_DISPATCH_ID);
+  }
+}
@@ -3,34 +3,62 @@ package tilt.apt.dispatch.processor;
 import static java.util.Optional.ofNullable;
 import static tilt.apt.dispatch.processor.SafeOperations.asElement;
 import static tilt.apt.dispatch.processor.SafeOperations.getQualifiedName;
+import static tilt.apt.dispatch.processor.SafeOperations.isPrivateElement;
+import static tilt.apt.dispatch.processor.SafeOperations.isStaticElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
 import static tilt.apt.dispatch.processor.UnsafeOperations.getExistingSuperclass;
 
 import com.google.auto.service.AutoService;
 import com.google.googlejavaformat.java.Formatter;
 import com.google.googlejavaformat.java.FormatterException;
+import com.sun.source.util.Trees;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.FileObject;
 import tilt.apt.dispatch.annotations.Case;
+import tilt.apt.dispatch.annotations.FlowSubscriber;
+import tilt.apt.dispatch.annotations.Memoize;
+import tilt.apt.dispatch.annotations.Pipeline;
 import tilt.apt.dispatch.annotations.Switch;
 
 /**
@@ -38,21 +66,213 @@ import tilt.apt.dispatch.annotations.Switch;
  *
  * <ul>
  *   <li>debug - turns on debug statements
+ *   <li>dispatch.format - set to false to write generated sources without google-java-format
+ *   <li>dispatch.index - set to false to skip writing the META-INF/tilt-dispatch/index resource
+ *   <li>dispatch.nativeImage - writes GraalVM native-image configuration into
+ *       META-INF/native-image/&lt;value&gt;, e.g. com.example/app
+ *   <li>dispatch.nativeImageBuildTime - set to true to also initialize the generated subclasses and
+ *       dispatchers with static dispatch state at image build time, which initializes the annotated
+ *       classes, their superclasses and the extensions of the switch at build time too
+ *   <li>dispatch.cacheDir - a directory where the supertypes of library classes are kept between
+ *       compiles, keyed by a hash of their class files
+ *   <li>dispatch.splitSize - the estimated bytecode size in bytes above which a switch method is
+ *       split into helper methods, 0 to never split; defaults to half of HotSpot's HugeMethodLimit
+ *   <li>dispatch.lint - reports performance lints and ambiguous Class token cases as a warning (the
+ *       default), as an error, or not at all with none
+ *   <li>dispatch.maxCases - the number of cases above which a switch is linted; defaults to 32
+ *   <li>dispatch.profile - a file of call counts per case, whose most called cases are hot like a
+ *       {@code @Case(hot = true)}. Each line holds a count and a case, as the qualified name of the
+ *       class of the switch, # and the method with the simple name of its @Case type, e.g. {@code
+ *       1200 com.example.Shapes#circle(Circle)}; lines starting with # are comments
+ *   <li>dispatch.hotCases - the number of the most called cases of the profile that are hot per
+ *       switch; defaults to 4
  * </ul>
  */
 @AutoService(Processor.class)
-@SupportedOptions({"debug"})
+@SupportedOptions({
+  "debug",
+  DispatchProcessor.OPTION_FORMAT,
+  DispatchProcessor.OPTION_INDEX,
+  DispatchProcessor.OPTION_NATIVE_IMAGE,
+  DispatchProcessor.OPTION_NATIVE_IMAGE_BUILD_TIME,
+  DispatchProcessor.OPTION_CACHE_DIR,
+  DispatchProcessor.OPTION_SPLIT_SIZE,
+  DispatchProcessor.OPTION_LINT,
+  DispatchProcessor.OPTION_MAX_CASES,
+  DispatchProcessor.OPTION_PROFILE,
+  DispatchProcessor.OPTION_HOT_CASES
+})
 public class DispatchProcessor extends AbstractProcessor {
   static final String SUFFIX_SUBCLASS = "_GeneratedSubclass";
   static final String SUFFIX_SUPERCLASS = "_GeneratedSuperclass";
+  static final String SUFFIX_VISITOR = "_GeneratedVisitor";
+  static final String SUFFIX_DISPATCHER = "_GeneratedDispatcher";
+  static final String SUFFIX_DISPATCH_ID = "_GeneratedDispatchId";
+  static final String SUFFIX_FLOW_SUBSCRIBER = "_GeneratedFlowSubscriber";
+  static final String SUFFIX_PIPELINE = "_GeneratedPipeline";
+  static final String SUFFIX_CASE_INDEX = "_GeneratedCaseIndex";
+  static final String SUFFIX_EXTENSION = "_GeneratedExtension";
+  static final String SUFFIX_HANDLE = "_GeneratedHandle";
+  static final String FIELD_INSTANCE = "INSTANCE";
 
   static final boolean OPTION_INHERIT_CASES = false;
 
+  static final String OPTION_FORMAT = "dispatch.format";
+  static final String OPTION_INDEX = "dispatch.index";
+  static final String OPTION_NATIVE_IMAGE = "dispatch.nativeImage";
+  static final String OPTION_NATIVE_IMAGE_BUILD_TIME = "dispatch.nativeImageBuildTime";
+  static final String OPTION_CACHE_DIR = "dispatch.cacheDir";
+  static final String OPTION_SPLIT_SIZE = "dispatch.splitSize";
+  static final String OPTION_LINT = "dispatch.lint";
+  static final String OPTION_MAX_CASES = "dispatch.maxCases";
+  static final String OPTION_PROFILE = "dispatch.profile";
+  static final String OPTION_HOT_CASES = "dispatch.hotCases";
+
+  private Formatter formatter;
+  private GeneratedIndex index;
+  private GeneratedNativeImageConfig nativeImageConfig;
+  private int splitSize = MethodSize.HUGE_METHOD_LIMIT / 2;
+  private HierarchyStore hierarchyStore;
+  private HierarchyCache hierarchy;
+  private final Map<String, String> caseIndexHolders = new HashMap<>();
+  private Kind lintKind = Kind.WARNING;
+  private int maxCases = 32;
+  private final Map<String, Long> profile = new HashMap<>();
+  private int hotCases = 4;
+
   public DispatchProcessor() {}
 
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    if (Boolean.parseBoolean(processingEnv.getOptions().getOrDefault(OPTION_FORMAT, "true"))) {
+      formatter = new Formatter();
+    }
+    if (Boolean.parseBoolean(processingEnv.getOptions().getOrDefault(OPTION_INDEX, "true"))) {
+      index = new GeneratedIndex(processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+    }
+    final String nativeImage = processingEnv.getOptions().get(OPTION_NATIVE_IMAGE);
+    if (nativeImage != null) {
+      nativeImageConfig =
+          new GeneratedNativeImageConfig(
+              processingEnv.getElementUtils(),
+              processingEnv.getTypeUtils(),
+              nativeImage.isBlank() ? "tilt-dispatch" : nativeImage,
+              Boolean.parseBoolean(
+                  processingEnv
+                      .getOptions()
+                      .getOrDefault(OPTION_NATIVE_IMAGE_BUILD_TIME, "false")));
+    }
+    final String cacheDir = processingEnv.getOptions().get(OPTION_CACHE_DIR);
+    if (cacheDir != null) {
+      hierarchyStore = createHierarchyStore(cacheDir);
+    }
+    hierarchy = new HierarchyCache(hierarchyStore);
+    splitSize = getIntOption(OPTION_SPLIT_SIZE, splitSize);
+    maxCases = getIntOption(OPTION_MAX_CASES, maxCases);
+    hotCases = getIntOption(OPTION_HOT_CASES, hotCases);
+    final String profilePath = processingEnv.getOptions().get(OPTION_PROFILE);
+    if (profilePath != null) {
+      readProfile(profilePath);
+    }
+    switch (processingEnv.getOptions().getOrDefault(OPTION_LINT, "warning")) {
+      case "warning":
+        lintKind = Kind.WARNING;
+        break;
+      case "error":
+        lintKind = Kind.ERROR;
+        break;
+      case "none":
+        lintKind = null;
+        break;
+      default:
+        fatalError(
+            String.format(
+                "Option %s is none of warning, error or none: %s",
+                OPTION_LINT, processingEnv.getOptions().get(OPTION_LINT)));
+    }
+  }
+
+  private HierarchyStore createHierarchyStore(final String cacheDir) {
+    final Trees trees;
+    try {
+      trees = Trees.instance(processingEnv);
+    } catch (IllegalArgumentException e) {
+      processingEnv
+          .getMessager()
+          .printMessage(
+              Kind.WARNING,
+              String.format("Option %s needs javac, the cache is not used", OPTION_CACHE_DIR));
+      return null;
+    }
+    final HierarchyStore store =
+        new HierarchyStore(
+            Paths.get(cacheDir),
+            processingEnv.getFiler(),
+            processingEnv.getElementUtils(),
+            trees,
+            processingEnv.getSourceVersion());
+    try {
+      store.load();
+    } catch (IOException e) {
+      processingEnv
+          .getMessager()
+          .printMessage(
+              Kind.WARNING,
+              String.format(
+                  "Option %s cache cannot be read, it is rebuilt: %s", OPTION_CACHE_DIR, e));
+    }
+    return store;
+  }
+
+  private int getIntOption(final String name, final int defaultValue) {
+    final String value = processingEnv.getOptions().get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      fatalError(String.format("Option %s is not a number: %s", name, value));
+      return defaultValue;
+    }
+  }
+
+  private void readProfile(final String path) {
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      fatalError(String.format("Option %s cannot be read: %s", OPTION_PROFILE, e));
+      return;
+    }
+    for (final String line : lines) {
+      final String[] fields = line.trim().split("\\s+");
+      if (fields[0].isEmpty() || fields[0].startsWith("#")) {
+        continue;
+      }
+      try {
+        if (fields.length != 2) {
+          throw new NumberFormatException();
+        }
+        profile.merge(fields[1], Long.parseLong(fields[0]), Long::sum);
+      } catch (NumberFormatException e) {
+        fatalError(
+            String.format(
+                "Option %s has a line that is not a count and a case: %s", OPTION_PROFILE, line));
+        return;
+      }
+    }
+  }
+
   @Override
   public Set<String> getSupportedAnnotationTypes() {
-    return Set.of(Switch.class.getName(), Case.class.getName());
+    return Set.of(
+        Switch.class.getName(),
+        Case.class.getName(),
+        Memoize.class.getName(),
+        FlowSubscriber.class.getName(),
+        Pipeline.class.getName());
   }
 
   @Override
@@ -75,54 +295,103 @@ public class DispatchProcessor extends AbstractProcessor {
 
   private boolean processImpl(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
     if (roundEnv.processingOver() == false) {
+      if (index != null) {
+        index.addCompiled(roundEnv.getRootElements());
+      }
       processAnnotations(annotations, roundEnv);
+    } else {
+      writeIndex();
+      writeNativeImageConfig();
+      saveHierarchyStore();
     }
     return true;
   }
 
-  private void writeSuperclass(TypeElement typeElement) {
-    final AnnotatedClass ac = new AnnotatedClass(processingEnv.getElementUtils(), typeElement);
-    final GeneratedSuperclass sg = new GeneratedSuperclass(ac);
+  private boolean writeSuperclass(SwitchBlock block) {
+    final AnnotatedClass ac =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    final GeneratedSuperclass sg = new GeneratedSuperclass(ac, block);
     if (sg.exists() == false) {
-      return;
-    }
-    try {
-      final FileObject fileObject =
-          ac.createSourceFile(processingEnv.getFiler(), SUFFIX_SUPERCLASS);
-      try (final Writer w =
-          new OutputStreamWriter(fileObject.openOutputStream(), StandardCharsets.UTF_8)) {
-        final Appendable aw = new AppendableString();
-        ac.appendPackage(aw);
-        sg.append(aw);
-        try {
-          w.write(new Formatter().formatSource(aw.toString()));
-        } catch (final FormatterException e) {
-          System.out.println(aw.toString());
-          throw e;
-        }
-        w.flush();
-      }
-    } catch (final IOException | FormatterException e) {
-      e.printStackTrace();
+      return false;
     }
+    writeSourceFile(ac, SUFFIX_SUPERCLASS, sg);
+    return true;
   }
 
-  private void writeSubclass(SwitchBlock block) {
+  private boolean writeSubclass(SwitchBlock block) {
     final AnnotatedClass an =
         new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
     final GeneratedSubclass gs = new GeneratedSubclass(an, block);
+    writeSourceFile(an, SUFFIX_SUBCLASS, gs);
+    return gs.hasStaticState();
+  }
+
+  private boolean writeDispatcher(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    final GeneratedDispatcher gd = new GeneratedDispatcher(an, block);
+    writeSourceFile(an, SUFFIX_DISPATCHER, gd);
+    return gd.hasStaticState();
+  }
+
+  private void writeVisitor(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    writeSourceFile(an, SUFFIX_VISITOR, new GeneratedVisitor(an, block));
+  }
+
+  private void writeDispatchId(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    writeSourceFile(an, SUFFIX_DISPATCH_ID, new GeneratedDispatchId(an, block));
+  }
+
+  private void writeExtension(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    block.setExtensionName(an.getGeneratedExtensionSimpleName());
+    writeSourceFile(an, SUFFIX_EXTENSION, new GeneratedExtension(an, block));
+  }
+
+  private void writeHandle(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    writeSourceFile(an, SUFFIX_HANDLE, new GeneratedHandle(an, block));
+  }
+
+  private void writePipeline(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    writeSourceFile(an, SUFFIX_PIPELINE, new GeneratedPipeline(an, block));
+  }
+
+  private void writeFlowSubscriber(SwitchBlock block) {
+    final AnnotatedClass an =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    writeSourceFile(an, SUFFIX_FLOW_SUBSCRIBER, new GeneratedFlowSubscriber(an, block));
+  }
+
+  private void writeSourceFile(
+      final AnnotatedClass ac, final String suffix, final GeneratedSource source) {
     try {
-      final FileObject fileObject = an.createSourceFile(processingEnv.getFiler(), SUFFIX_SUBCLASS);
+      final FileObject fileObject = ac.createSourceFile(processingEnv.getFiler(), suffix);
       try (final Writer w =
           new OutputStreamWriter(fileObject.openOutputStream(), StandardCharsets.UTF_8)) {
-        final Appendable aw = new AppendableString();
-        an.appendPackage(aw);
-        gs.append(aw);
-        try {
-          w.write(new Formatter().formatSource(aw.toString()));
-        } catch (final FormatterException e) {
-          System.out.println(aw.toString());
-          throw e;
+        if (formatter == null) {
+          // Streams the unformatted source straight into the compiler's file
+          final Appendable aw = new AppendableWriter(w);
+          ac.appendPackage(aw);
+          source.append(aw);
+        } else {
+          final Appendable aw = new AppendableString();
+          ac.appendPackage(aw);
+          source.append(aw);
+          try {
+            w.write(formatter.formatSource(aw.toString()));
+          } catch (final FormatterException e) {
+            System.out.println(aw.toString());
+            throw e;
+          }
         }
         w.flush();
       }
@@ -131,9 +400,48 @@ public class DispatchProcessor extends AbstractProcessor {
     }
   }
 
+  private void writeIndex() {
+    if (index == null) {
+      return;
+    }
+    try {
+      index.write(processingEnv.getFiler());
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void saveHierarchyStore() {
+    if (hierarchyStore == null) {
+      return;
+    }
+    log("hierarchy store: " + hierarchyStore);
+    try {
+      hierarchyStore.save();
+    } catch (final IOException e) {
+      processingEnv
+          .getMessager()
+          .printMessage(
+              Kind.WARNING,
+              String.format("Option %s cache cannot be written: %s", OPTION_CACHE_DIR, e));
+    }
+  }
+
+  private void writeNativeImageConfig() {
+    if (nativeImageConfig == null || nativeImageConfig.isEmpty()) {
+      return;
+    }
+    try {
+      nativeImageConfig.write(processingEnv.getFiler());
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
   private void processAnnotations(
       Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
     final Map<String, SwitchBlock> blocks = new HashMap<>();
+    hierarchy.startRound();
     log(annotations.toString());
     final Set<? extends Element> switchElements = roundEnv.getElementsAnnotatedWith(Switch.class);
     log(switchElements.toString());
@@ -143,12 +451,112 @@ public class DispatchProcessor extends AbstractProcessor {
           new ParameterInMethod(processingEnv.getElementUtils(), (VariableElement) e);
       if (switchParameter.isGoodSwitch() == false) {
         error(
-            "Method with @Switch is not overridable",
+            "Method with @Switch is neither overridable nor static",
             switchParameter.methodInType.methodElement,
             am);
         continue;
       }
+      if (e.getAnnotation(Switch.class).strategy() == Switch.Strategy.VISITOR
+          && switchParameter.methodInType.methodElement.getTypeParameters().isEmpty() == false) {
+        error("Generic method with @Switch cannot be visited", e, am);
+        continue;
+      }
+      if (e.getAnnotation(Switch.class).strategy() == Switch.Strategy.VISITOR
+          && switchParameter.isStatic()) {
+        error("Static method with @Switch cannot be visited", e, am);
+        continue;
+      }
+      final Switch.Strategy requested = e.getAnnotation(Switch.class).strategy();
+      if (requested != Switch.Strategy.AUTO
+          && (requested == Switch.Strategy.VALUE) != switchParameter.isValueParameter()) {
+        error(
+            switchParameter.isValueParameter()
+                ? "A @Switch on an enum, String or int only supports strategy VALUE"
+                : "Strategy VALUE needs a @Switch on an enum, String or int",
+            e,
+            am);
+        continue;
+      }
+      if (requested != Switch.Strategy.AUTO
+          && requested != Switch.Strategy.CLASS_VALUE
+          && switchParameter.isClassTokenParameter()) {
+        error("A @Switch on Class tokens only supports strategy CLASS_VALUE", e, am);
+        continue;
+      }
+      final ExecutableElement method = switchParameter.methodInType.methodElement;
+      if (method.getAnnotation(Memoize.class) != null
+          && (switchParameter.isStatic()
+              || method.getReturnType().getKind() == TypeKind.VOID
+              || method.getParameters().size() != 1
+              || switchParameter.variableElement.asType().getKind().isPrimitive())) {
+        error(
+            "@Memoize requires a non-static method with a result and a single @Switch parameter"
+                + " of a reference type",
+            method,
+            getAnnotationMirror(method, Memoize.class));
+        continue;
+      }
+      final FlowSubscriber flowSubscriber = method.getAnnotation(FlowSubscriber.class);
+      if (flowSubscriber != null
+          && (method.getParameters().size() != 1
+              || flowSubscriber.batchSize() <= 0
+              || flowSubscriber.maxDelayMillis() < 0
+              || switchParameter.isValueParameter()
+              || switchParameter.isClassTokenParameter()
+              || processingEnv.getSourceVersion().compareTo(SourceVersion.RELEASE_9) < 0)) {
+        error(
+            "@FlowSubscriber requires a positive batch size, a delay that is not negative, a single"
+                + " @Switch parameter that is neither a value nor a Class token and release 9 or"
+                + " later",
+            method,
+            getAnnotationMirror(method, FlowSubscriber.class));
+        continue;
+      }
+      final Pipeline pipeline = method.getAnnotation(Pipeline.class);
+      if (pipeline != null
+          && (method.getParameters().size() != 1
+              || method.getReturnType().getKind() != TypeKind.VOID
+              || pipeline.capacity() <= 0
+              || Integer.bitCount(pipeline.capacity()) != 1
+              || pipeline.batchSize() <= 0
+              || pipeline.stripes() <= 0
+              || switchParameter.isValueParameter()
+              || switchParameter.isClassTokenParameter()
+              || e.getAnnotation(Switch.class).extensible())) {
+        error(
+            "@Pipeline requires a void method with a single @Switch parameter that is neither a"
+                + " value nor a Class token nor extensible, a capacity that is a power of two and"
+                + " a positive batch size and number of stripes",
+            method,
+            getAnnotationMirror(method, Pipeline.class));
+        continue;
+      }
       final TypeElement typeElement = switchParameter.getTypeElement();
+      if (e.getAnnotation(Switch.class).extensible()
+          && (requested == Switch.Strategy.VISITOR
+              || switchParameter.isValueParameter()
+              || method.getTypeParameters().isEmpty() == false
+              || typeElement.getTypeParameters().isEmpty() == false
+              || flowSubscriber != null)) {
+        error(
+            "An extensible @Switch needs a method and class without type parameters, a strategy"
+                + " other than VISITOR or VALUE and no @FlowSubscriber",
+            e,
+            am);
+        continue;
+      }
+      if (e.getAnnotation(Switch.class).handles()
+          && (switchParameter.isValueParameter()
+              || switchParameter.isClassTokenParameter()
+              || method.getTypeParameters().isEmpty() == false
+              || typeElement.getTypeParameters().isEmpty() == false)) {
+        error(
+            "Handles need a method and class without type parameters and a @Switch that is"
+                + " neither a value nor a Class token",
+            e,
+            am);
+        continue;
+      }
       if (blocks.remove(getQualifiedName(typeElement)) != null) {
         fatalError("Limitation: no more than one switch per class is allowed");
         continue;
@@ -170,7 +578,13 @@ public class DispatchProcessor extends AbstractProcessor {
               ? blocks.computeIfAbsent(
                   getQualifiedName(typeElement), key -> new SwitchBlock(typeElement))
               : blocks.get(getQualifiedName(typeElement));
-      if (block != null) {
+      if (block != null
+          && block.hasSwitch()
+          && block.isStatic()
+          && (caseParameter.isStatic() == false
+              || isPrivateElement(caseParameter.methodInType.methodElement))) {
+        error("@Case of a static @Switch must be a non-private static method", e, am);
+      } else if (block != null) {
         block.addCaseParameter(caseParameter);
       } else {
         error("No @Switch for the @Case", caseParameter.methodInType.methodElement, am);
@@ -189,13 +603,813 @@ public class DispatchProcessor extends AbstractProcessor {
       }
     }
     blocks.values().removeIf(it -> it.hasSwitch() == false);
+    blocks.values().forEach(this::sortClassTokenCases);
+    blocks.values().forEach(this::resolveSingleton);
+    blocks.values().forEach(this::resolveStrategy);
+    blocks.values().forEach(this::resolveInterceptors);
+    blocks.values().forEach(this::resolveHotCases);
+    blocks.values().forEach(this::resolveSplit);
+    log("hierarchy cache: " + hierarchy);
+    if (lintKind != null) {
+      blocks.values().forEach(this::lint);
+    }
+    blocks.values().forEach(this::checkCaseValues);
+    blocks.values().forEach(this::checkCaseLimits);
+    blocks.values().forEach(this::checkDispatchIds);
+    blocks.values().forEach(this::resolvePipelineKey);
+    shareCaseIndexes(blocks.values());
     blocks.forEach(
         (key, block) -> {
-          writeSuperclass(block.typeElement);
-          writeSubclass(block);
+          final AnnotatedClass ac =
+              new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+          if (block.getStrategy() == Switch.Strategy.DISPATCH_ID) {
+            writeDispatchId(block);
+          }
+          if (block.getSwitch().extensible()) {
+            writeExtension(block);
+          }
+          if (block.getSwitch().handles()) {
+            writeHandle(block);
+          }
+          if (block.getSwitchMethodElement().getAnnotation(FlowSubscriber.class) != null) {
+            writeFlowSubscriber(block);
+          }
+          if (block.getSwitchMethodElement().getAnnotation(Pipeline.class) != null) {
+            writePipeline(block);
+          }
+          if (block.isStatic()) {
+            final boolean hasStaticState = writeDispatcher(block);
+            if (index != null) {
+              index.add(ac, block, false);
+            }
+            if (nativeImageConfig != null) {
+              nativeImageConfig.add(ac, block, false, hasStaticState);
+            }
+            return;
+          }
+          final boolean hasFactories = writeSuperclass(block);
+          final boolean hasStaticState = writeSubclass(block);
+          if (block.getStrategy() == Switch.Strategy.VISITOR) {
+            writeVisitor(block);
+          }
+          if (index != null) {
+            index.add(ac, block, hasFactories);
+          }
+          if (nativeImageConfig != null) {
+            nativeImageConfig.add(ac, block, hasFactories, hasStaticState);
+          }
+        });
+  }
+
+  private void resolveSingleton(final SwitchBlock block) {
+    if (block.isStatic()) {
+      return;
+    }
+    final AnnotatedClass ac =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement);
+    final boolean stateless =
+        ac.getTypeParameterElements().isEmpty()
+            && ac.getNoArgConstructor() != null
+            && ac.hasInstanceFields() == false;
+    // The shared instance is only reachable through instance() of the generated superclass
+    final boolean accessible = new GeneratedSuperclass(ac, block).exists();
+    switch (block.getSwitch().singleton()) {
+      case AUTO:
+        block.setSingleton(stateless && accessible);
+        break;
+      case ALWAYS:
+        if (stateless == false) {
+          error(
+              "Shared instance requires a non-generic class without instance fields"
+                  + " and with a no-arg constructor",
+              block.getSwitchParameterElement(),
+              getAnnotationMirror(block.getSwitchParameterElement(), Switch.class));
+        } else if (accessible == false) {
+          error(
+              String.format(
+                  "Shared instance requires a class extending %s",
+                  ac.getGeneratedSuperclassSimpleName()),
+              block.getSwitchParameterElement(),
+              getAnnotationMirror(block.getSwitchParameterElement(), Switch.class));
+        }
+        block.setSingleton(stateless && accessible);
+        break;
+      case NEVER:
+        block.setSingleton(false);
+        break;
+    }
+    log(String.format("%s singleton: %s", block.typeElement, block.isSingleton()));
+  }
+
+  private void resolveStrategy(final SwitchBlock block) {
+    if (block.isValueSwitch() == false && block.isClassTokenSwitch() == false) {
+      block.setExactClasses(
+          new ClosedHierarchy(processingEnv.getElementUtils(), processingEnv.getTypeUtils())
+              .findExactClasses(block));
+    }
+    if (block.getSwitch().strategy() == Switch.Strategy.EXACT_CLASS
+        && block.getExactClasses() == null) {
+      final VariableElement e = block.getSwitchParameterElement();
+      error(
+          "Strategy EXACT_CLASS needs a @Switch on a type whose subclasses are known at compile"
+              + " time: a final or sealed type, or one that is neither public nor protected",
+          e,
+          getAnnotationMirror(e, Switch.class));
+      block.setExactClasses(Collections.emptyList());
+    }
+    final List<String> reasons = new ArrayList<>();
+    block.setStrategy(
+        new StrategySelection(
+                processingEnv.getSourceVersion(), processingEnv.getElementUtils(), hierarchy)
+            .select(block, reasons));
+    log(
+        String.format(
+            "%s strategy: %s (%s)",
+            block.typeElement, block.getStrategy(), String.join("; ", reasons)));
+  }
+
+  /**
+   * Finds the hooks of the interceptors of the switch for each case. The interceptor classes are
+   * read from the annotation mirror, since the processor cannot load them.
+   */
+  private void resolveInterceptors(final SwitchBlock block) {
+    final VariableElement e = block.getSwitchParameterElement();
+    final AnnotationMirror am = getAnnotationMirror(e, Switch.class);
+    final List<TypeElement> interceptors = new ArrayList<>();
+    am.getElementValues()
+        .forEach(
+            (name, value) -> {
+              if (name.getSimpleName().contentEquals("interceptors")) {
+                for (final Object it : (List<?>) value.getValue()) {
+                  final TypeElement interceptor =
+                      asTypeElement((TypeMirror) ((AnnotationValue) it).getValue());
+                  if (interceptor == null || Interceptors.hasHooks(interceptor) == false) {
+                    error(
+                        String.format(
+                            "Interceptor %s has no static before, after or onError method that"
+                                + " throws no checked exception",
+                            it),
+                        e,
+                        am);
+                  } else {
+                    interceptors.add(interceptor);
+                  }
+                }
+              }
+            });
+    if (interceptors.isEmpty()) {
+      return;
+    }
+    if (block.getStrategy() == Switch.Strategy.VISITOR) {
+      error("Strategy VISITOR does not support interceptors, choose another strategy", e, am);
+      return;
+    }
+    block.setInterceptors(
+        Interceptors.resolve(
+            processingEnv.getElementUtils(), processingEnv.getTypeUtils(), block, interceptors));
+  }
+
+  /**
+   * Finds the classes the switch method tests before the other cases: those of the cases with
+   * {@link Case#hot()} and of the most called cases of the profile, hottest first. A class takes
+   * the hot path only if it is exactly the type of its case or one of the known classes of a closed
+   * hierarchy, so that the case is the one the full dispatch would pick.
+   */
+  private void resolveHotCases(final SwitchBlock block) {
+    final List<ParameterInMethod> cases = new ArrayList<>(block.getCaseParameters());
+    final List<Integer> hot = new ArrayList<>();
+    cases
+        .stream()
+        .filter(it -> profile.containsKey(formatProfileKey(block, it)))
+        .sorted(
+            Comparator.comparing((ParameterInMethod it) -> profile.get(formatProfileKey(block, it)))
+                .reversed())
+        .limit(hotCases)
+        .forEach(it -> hot.add(cases.indexOf(it)));
+    for (int index = 0; index < cases.size(); index++) {
+      if (cases.get(index).variableElement.getAnnotation(Case.class).hot()
+          && hot.contains(index) == false) {
+        hot.add(index);
+      }
+    }
+    if (hot.isEmpty()) {
+      return;
+    }
+    if (block.isValueSwitch()
+        || block.isClassTokenSwitch()
+        || block.getStrategy() == Switch.Strategy.VISITOR) {
+      for (final int index : hot) {
+        final VariableElement e = cases.get(index).variableElement;
+        if (e.getAnnotation(Case.class).hot()) {
+          warning(
+              String.format(
+                  "Hot @Case is ignored by a %s switch",
+                  block.isClassTokenSwitch() ? "Class token" : block.getStrategy()),
+              e,
+              getAnnotationMirror(e, Case.class));
+        }
+      }
+      return;
+    }
+    final Types types = processingEnv.getTypeUtils();
+    final List<ExactClassDispatch.ExactClass> hotClasses = new ArrayList<>();
+    for (final int index : hot) {
+      if (block.getExactClasses() != null) {
+        block
+            .getExactClasses()
+            .stream()
+            .filter(it -> it.caseIndex == index)
+            .forEach(hotClasses::add);
+        continue;
+      }
+      final VariableElement e = cases.get(index).variableElement;
+      final TypeElement typeElement = asTypeElement(block.getCaseType(cases.get(index)));
+      final boolean isShadowed =
+          typeElement != null
+              && cases
+                  .subList(0, index)
+                  .stream()
+                  .anyMatch(
+                      it ->
+                          types.isSubtype(
+                              types.erasure(typeElement.asType()),
+                              types.erasure(block.getCaseType(it))));
+      if (typeElement == null || ClosedHierarchy.isConcrete(typeElement) == false || isShadowed) {
+        if (e.getAnnotation(Case.class).hot()) {
+          warning(
+              "Hot @Case is ignored, its type is not a class that only this case handles, and its"
+                  + " subclasses are not known at compile time",
+              e,
+              getAnnotationMirror(e, Case.class));
+        }
+        continue;
+      }
+      hotClasses.add(
+          new ExactClassDispatch.ExactClass(
+              typeElement.getQualifiedName().toString(),
+              processingEnv.getElementUtils().getBinaryName(typeElement).toString(),
+              index));
+    }
+    if (hotClasses.isEmpty()) {
+      return;
+    }
+    final VariableElement e = block.getSwitchParameterElement();
+    if (hotClasses.size() > ExactClassDispatch.MAX_IDENTITY_TESTS) {
+      warning(
+          String.format(
+              "Only the first %d of %d hot classes are tested before the other cases",
+              ExactClassDispatch.MAX_IDENTITY_TESTS, hotClasses.size()),
+          e,
+          getAnnotationMirror(e, Switch.class));
+      hotClasses.subList(ExactClassDispatch.MAX_IDENTITY_TESTS, hotClasses.size()).clear();
+    }
+    block.setHotClasses(hotClasses);
+    final int size = new MethodSize(block).estimateHotPath(hotClasses);
+    log(
+        String.format(
+            "%s hot path: %s, about %d bytes",
+            block.typeElement,
+            hotClasses.stream().map(it -> it.name).collect(Collectors.joining(", ")),
+            size));
+    if (size > MethodSize.FREQ_INLINE_SIZE) {
+      warning(
+          String.format(
+              "Hot path of the switch method is about %d bytes of bytecode, HotSpot does not"
+                  + " inline methods over %d bytes into hot callers",
+              size, MethodSize.FREQ_INLINE_SIZE),
+          e,
+          getAnnotationMirror(e, Switch.class));
+    }
+  }
+
+  /** Returns how the profile names a case. */
+  private static String formatProfileKey(
+      final SwitchBlock block, final ParameterInMethod caseParameter) {
+    return block.typeElement.getQualifiedName() + "#" + LimitedCases.formatCaseName(caseParameter);
+  }
+
+  /**
+   * Checks the limit, overflow and fallback and the coalescing of every @Case. A fallback is a
+   * method that takes the parameters of the case and returns what the switch method returns, and a
+   * coalescing key method takes the parameter of the case and returns the key, and an executor
+   * method takes nothing and returns an executor.
+   */
+  private void checkCaseLimits(final SwitchBlock block) {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+    final Types types = processingEnv.getTypeUtils();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final VariableElement e = caseParameter.variableElement;
+      final AnnotationMirror am = getAnnotationMirror(e, Case.class);
+      final Case annotation = e.getAnnotation(Case.class);
+      final boolean isFallback = annotation.overflow() == Case.Overflow.FALLBACK;
+      if (annotation.limit() < 0) {
+        error("The limit of a @Case must not be negative", e, am);
+      } else if (annotation.limit() == 0) {
+        if (annotation.overflow() != Case.Overflow.REJECT
+            || annotation.fallback().isEmpty() == false) {
+          error("The overflow and fallback of a @Case need a limit", e, am);
+        }
+      } else if (block.getStrategy() == Switch.Strategy.VISITOR) {
+        error("A @Case with a limit needs a @Switch with a strategy other than VISITOR", e, am);
+      } else if (isFallback == annotation.fallback().isEmpty()) {
+        error("A fallback needs the overflow FALLBACK, which needs a fallback", e, am);
+      } else if (annotation.overflow() == Case.Overflow.DROP && isVoid == false) {
+        error("The overflow DROP needs a void @Switch method", e, am);
+      } else if (isFallback
+          && hasCaseMethod(
+                  block,
+                  caseParameter,
+                  annotation.fallback(),
+                  it -> isVoid || types.isAssignable(it.getReturnType(), method.getReturnType()))
+              == false) {
+        error(
+            String.format(
+                "No fallback method %s: it must take the parameters of the @Case, return what"
+                    + " the @Switch returns and be non-private, and static for a static @Switch",
+                annotation.fallback()),
+            e,
+            am);
+      }
+      if (annotation.coalesce().isEmpty()) {
+        if (annotation.executor().isEmpty() == false) {
+          error("The executor of a @Case needs a coalescing @Case", e, am);
+        }
+        continue;
+      }
+      if (isVoid == false
+          || method.getParameters().size() != 1
+          || block.getStrategy() == Switch.Strategy.VISITOR
+          || annotation.limit() != 0
+          || annotation.windowMillis() <= 0
+          || annotation.maxPending() <= 0) {
+        error(
+            "A coalescing @Case needs a void @Switch method with a single parameter, a strategy"
+                + " other than VISITOR, no limit and a positive window and pending size",
+            e,
+            am);
+      } else if (hasCaseMethod(
+              block,
+              caseParameter,
+              annotation.coalesce(),
+              it -> it.getReturnType().getKind() != TypeKind.VOID && it.getThrownTypes().isEmpty())
+          == false) {
+        error(
+            String.format(
+                "No key method %s: it must take the parameter of the @Case, return something,"
+                    + " throw no checked exception and be non-private, and static for a static"
+                    + " @Switch",
+                annotation.coalesce()),
+            e,
+            am);
+      } else if (annotation.executor().isEmpty() == false
+          && hasExecutorMethod(block, caseParameter, annotation.executor()) == false) {
+        error(
+            String.format(
+                "No executor method %s: it must take no parameters, return an Executor and be"
+                    + " non-private, and static for a static @Switch",
+                annotation.executor()),
+            e,
+            am);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the class of a case has a non-private method of the name without parameters,
+   * static for a static switch, that returns an {@link Executor}.
+   */
+  private boolean hasExecutorMethod(
+      final SwitchBlock block, final ParameterInMethod caseParameter, final String name) {
+    final Types types = processingEnv.getTypeUtils();
+    final TypeMirror executor =
+        processingEnv.getElementUtils().getTypeElement(Executor.class.getName()).asType();
+    return ElementFilter.methodsIn(
+            processingEnv.getElementUtils().getAllMembers(caseParameter.getTypeElement()))
+        .stream()
+        .filter(it -> it.getSimpleName().contentEquals(name))
+        .filter(it -> it.getParameters().isEmpty())
+        .filter(it -> isPrivateElement(it) == false)
+        .filter(it -> block.isStatic() == false || isStaticElement(it))
+        .anyMatch(it -> types.isAssignable(it.getReturnType(), executor));
+  }
+
+  /**
+   * Returns true if the class of a case has a non-private method of the name, static for a static
+   * switch, that takes the parameters of the case.
+   */
+  private boolean hasCaseMethod(
+      final SwitchBlock block,
+      final ParameterInMethod caseParameter,
+      final String name,
+      final Predicate<ExecutableElement> predicate) {
+    final Types types = processingEnv.getTypeUtils();
+    final List<? extends VariableElement> parameters =
+        caseParameter.methodInType.getMethodParameters();
+    return ElementFilter.methodsIn(
+            processingEnv.getElementUtils().getAllMembers(caseParameter.getTypeElement()))
+        .stream()
+        .filter(it -> it.getSimpleName().contentEquals(name))
+        .filter(it -> it.getParameters().size() == parameters.size())
+        .filter(
+            it -> {
+              for (int i = 0; i < parameters.size(); i++) {
+                if (types.isAssignable(
+                        parameters.get(i).asType(), it.getParameters().get(i).asType())
+                    == false) {
+                  return false;
+                }
+              }
+              return true;
+            })
+        .filter(it -> isPrivateElement(it) == false)
+        .filter(it -> block.isStatic() == false || isStaticElement(it))
+        .anyMatch(predicate);
+  }
+
+  private void checkCaseValues(final SwitchBlock block) {
+    final TypeMirror switchType = block.getSwitchParameterElement().asType();
+    final Set<String> constants =
+        ofNullable(asTypeElement(switchType))
+            .filter(it -> it.getKind() == ElementKind.ENUM)
+            .map(
+                it ->
+                    it.getEnclosedElements()
+                        .stream()
+                        .filter(c -> c.getKind() == ElementKind.ENUM_CONSTANT)
+                        .map(c -> c.getSimpleName().toString())
+                        .collect(Collectors.toSet()))
+            .orElse(null);
+    final Map<String, ParameterInMethod> values = new HashMap<>();
+    final List<CaseRange> ranges = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final VariableElement e = caseParameter.variableElement;
+      final AnnotationMirror am = getAnnotationMirror(e, Case.class);
+      final Case annotation = e.getAnnotation(Case.class);
+      final boolean hasValues = annotation.value().length > 0;
+      final boolean hasInts = annotation.ints().length > 0 || annotation.ranges().length > 0;
+      if (block.isValueSwitch() == false) {
+        if (hasValues || hasInts) {
+          error("@Case values need a @Switch on an enum, String or int", e, am);
+        }
+        continue;
+      }
+      if (processingEnv.getTypeUtils().isSameType(e.asType(), switchType) == false) {
+        error("@Case of a @Switch on values must take the type of the @Switch", e, am);
+      } else if (hasValues == false && hasInts == false) {
+        error("@Case of a @Switch on values must list at least one value", e, am);
+      } else if (switchType.getKind().isPrimitive() ? hasValues : hasInts) {
+        error(
+            switchType.getKind().isPrimitive()
+                ? "@Case of a @Switch on ints takes ints and ranges"
+                : "@Case of a @Switch on an enum or String takes names or strings in value",
+            e,
+            am);
+      }
+      for (final String value : annotation.value()) {
+        if (constants != null && constants.contains(value) == false) {
+          error(String.format("%s is not a constant of %s", value, switchType), e, am);
+        }
+        final ParameterInMethod other = values.putIfAbsent(value, caseParameter);
+        if (other != null) {
+          error(String.format("%s is already handled by %s", value, other.getMethodName()), e, am);
+        }
+      }
+      for (final int value : annotation.ints()) {
+        ranges.add(new CaseRange(value, value, caseParameter));
+      }
+      for (final Case.Range range : annotation.ranges()) {
+        if (range.from() > range.to()) {
+          error(String.format("Range from %d to %d is empty", range.from(), range.to()), e, am);
+        } else {
+          ranges.add(new CaseRange(range.from(), range.to(), caseParameter));
+        }
+      }
+    }
+    ranges.sort(Comparator.comparingLong(it -> it.from));
+    CaseRange last = null;
+    for (final CaseRange range : ranges) {
+      final VariableElement e = range.caseParameter.variableElement;
+      if (range.isWithin(switchType.getKind()) == false) {
+        error(
+            String.format("Values from %d to %d do not fit %s", range.from, range.to, switchType),
+            e,
+            getAnnotationMirror(e, Case.class));
+      }
+      if (last != null && range.from <= last.to) {
+        error(
+            String.format(
+                "Values from %d to %d overlap values handled by %s",
+                range.from, range.to, last.caseParameter.getMethodName()),
+            e,
+            getAnnotationMirror(e, Case.class));
+      }
+      if (last == null || range.to > last.to) {
+        last = range;
+      }
+    }
+  }
+
+  /** Reports the parts of a switch that cost more at run time than they need to. */
+  private void lint(final SwitchBlock block) {
+    final Types types = processingEnv.getTypeUtils();
+    final VariableElement switchElement = block.getSwitchParameterElement();
+    final AnnotationMirror switchMirror = getAnnotationMirror(switchElement, Switch.class);
+    final int count = block.getCaseParameters().size();
+    if (count > maxCases) {
+      lint(
+          String.format("Switch has %d cases, more than %d", count, maxCases),
+          switchElement,
+          switchMirror);
+    }
+    final int size = new MethodSize(block).estimate();
+    if (block.isSplit() == false
+        && size > MethodSize.FREQ_INLINE_SIZE
+        && size <= MethodSize.HUGE_METHOD_LIMIT * 4 / 5) {
+      lint(
+          String.format(
+              "Switch method is about %d bytes of bytecode, HotSpot does not inline methods"
+                  + " over %d bytes into hot callers",
+              size, MethodSize.FREQ_INLINE_SIZE),
+          switchElement,
+          switchMirror);
+    }
+    if (block.getStrategy() == Switch.Strategy.DISPATCH_ID) {
+      final String name =
+          new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement)
+              .getGeneratedDispatchIdSimpleName();
+      final TypeElement switchTypeElement = asTypeElement(switchElement.asType());
+      if (switchTypeElement == null
+          || hierarchy.hasSupertypeNamed(switchTypeElement, name) == false) {
+        lint(
+            String.format(
+                "Switch type %s does not implement %s, every call tests and casts the argument"
+                    + " before it reads the id",
+                switchElement.asType(), name),
+            switchElement,
+            switchMirror);
+      }
+    }
+    final boolean ordered =
+        block.getStrategy() == Switch.Strategy.INSTANCEOF || block.hasCaseIndexField();
+    final TypeMirror switchReturnType = block.getSwitchMethodElement().getReturnType();
+    final List<ParameterInMethod> earlier = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final VariableElement e = caseParameter.variableElement;
+      final AnnotationMirror am = getAnnotationMirror(e, Case.class);
+      final TypeMirror caseType = types.erasure(block.getCaseType(caseParameter));
+      if (ordered) {
+        earlier
+            .stream()
+            .filter(it -> types.isSubtype(caseType, types.erasure(block.getCaseType(it))))
+            .findFirst()
+            .ifPresent(
+                it ->
+                    lint(
+                        String.format(
+                            "Case is never reached, %s takes %s first",
+                            it.getMethodName(), caseType),
+                        e,
+                        am));
+      }
+      final TypeElement caseTypeElement = asTypeElement(caseType);
+      // Only a requested strategy, AUTO weighs the cost of interfaces when it picks INSTANCEOF
+      if (switchElement.getAnnotation(Switch.class).strategy() == Switch.Strategy.INSTANCEOF
+          && caseTypeElement != null
+          && caseTypeElement.getKind() == ElementKind.INTERFACE) {
+        lint(
+            String.format(
+                "Interface %s is tested by a scan of the secondary supertypes,"
+                    + " strategy CLASS_VALUE or DISPATCH_ID avoids it",
+                caseType),
+            e,
+            am);
+      }
+      final TypeMirror caseReturnType = caseParameter.methodInType.methodElement.getReturnType();
+      if (switchReturnType.getKind() != TypeKind.VOID
+          && caseReturnType.getKind() != TypeKind.VOID
+          && switchReturnType.getKind().isPrimitive() != caseReturnType.getKind().isPrimitive()) {
+        lint(
+            String.format(
+                "Case returns %s, which is %s to %s on every call",
+                caseReturnType,
+                caseReturnType.getKind().isPrimitive() ? "boxed" : "unboxed",
+                switchReturnType),
+            caseParameter.methodInType.methodElement,
+            am);
+      }
+      earlier.add(caseParameter);
+    }
+  }
+
+  /**
+   * Checks the cases of a switch on Class tokens and orders them from the most to the least
+   * specific, so that a token resolves to the case of its nearest supertype.
+   */
+  private void sortClassTokenCases(final SwitchBlock block) {
+    if (block.isClassTokenSwitch() == false) {
+      return;
+    }
+    final Types types = processingEnv.getTypeUtils();
+    final List<ParameterInMethod> sorted = new ArrayList<>();
+    final List<ParameterInMethod> declared = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final VariableElement e = caseParameter.variableElement;
+      if (caseParameter.isClassTokenParameter() == false || caseParameter.getTokenType() == null) {
+        error(
+            "@Case of a @Switch on Class tokens must take Class<A> for a class or interface A",
+            e,
+            getAnnotationMirror(e, Case.class));
+        continue;
+      }
+      final TypeMirror caseType = types.erasure(caseParameter.getTokenType());
+      if (lintKind != null) {
+        lintAmbiguousToken(declared, caseParameter, caseType);
+      }
+      declared.add(caseParameter);
+      int at = sorted.size();
+      for (int i = 0; i < sorted.size(); i++) {
+        if (types.isSubtype(caseType, types.erasure(sorted.get(i).getTokenType()))) {
+          at = i;
+          break;
+        }
+      }
+      sorted.add(at, caseParameter);
+    }
+    block.setCaseParameters(sorted);
+  }
+
+  /**
+   * Reports a token case whose type is unrelated to that of an earlier case, while a class could
+   * extend or implement both. A token of such a class resolves to the case declared first.
+   */
+  private void lintAmbiguousToken(
+      final List<ParameterInMethod> earlier,
+      final ParameterInMethod caseParameter,
+      final TypeMirror caseType) {
+    final Types types = processingEnv.getTypeUtils();
+    final TypeElement caseTypeElement = asTypeElement(caseType);
+    for (final ParameterInMethod other : earlier) {
+      final TypeMirror otherType = types.erasure(other.getTokenType());
+      final TypeElement otherTypeElement = asTypeElement(otherType);
+      if (caseTypeElement == null
+          || otherTypeElement == null
+          || types.isSubtype(caseType, otherType)
+          || types.isSubtype(otherType, caseType)
+          || canShareSubtype(caseTypeElement, otherTypeElement) == false) {
+        continue;
+      }
+      lint(
+          String.format(
+              "Case is ambiguous with %s, a token of a subtype of both %s and %s resolves to %s"
+                  + " declared first",
+              other.getMethodName(), otherType, caseType, other.getMethodName()),
+          caseParameter.variableElement,
+          getAnnotationMirror(caseParameter.variableElement, Case.class));
+    }
+  }
+
+  /** Returns true if a class could be a subtype of both unrelated types. */
+  private static boolean canShareSubtype(final TypeElement a, final TypeElement b) {
+    final boolean aInterface = a.getKind().isInterface();
+    final boolean bInterface = b.getKind().isInterface();
+    if (aInterface && bInterface) {
+      return true;
+    }
+    if (aInterface == false && bInterface == false) {
+      return false;
+    }
+    final TypeElement c = aInterface ? b : a;
+    return c.getModifiers().contains(Modifier.FINAL) == false;
+  }
+
+  /**
+   * Lets the switches and flow subscribers of a package that map the same case types to the same
+   * indexes share one {@link ClassValue}. The holder written in an earlier round is reused.
+   */
+  private void shareCaseIndexes(final Collection<SwitchBlock> blocks) {
+    final Map<String, List<SwitchBlock>> groups = new TreeMap<>();
+    for (final SwitchBlock block : blocks) {
+      if (countCaseIndexes(block) > 0) {
+        groups.computeIfAbsent(formatCaseIndexKey(block), it -> new ArrayList<>()).add(block);
+      }
+    }
+    groups.forEach(
+        (key, group) -> {
+          String holder = caseIndexHolders.get(key);
+          if (holder == null) {
+            if (group.stream().mapToInt(this::countCaseIndexes).sum() < 2) {
+              return;
+            }
+            group.sort(Comparator.comparing(it -> getQualifiedName(it.typeElement)));
+            final AnnotatedClass ac =
+                new AnnotatedClass(processingEnv.getElementUtils(), group.get(0).typeElement);
+            writeSourceFile(ac, SUFFIX_CASE_INDEX, new GeneratedCaseIndex(ac, group.get(0)));
+            if (nativeImageConfig != null) {
+              nativeImageConfig.addStaticState(ac.getGeneratedCaseIndexBinaryName());
+            }
+            holder = ac.getGeneratedCaseIndexSimpleName();
+            caseIndexHolders.put(key, holder);
+            log(String.format("%s shared by %d switches", holder, group.size()));
+          }
+          for (final SwitchBlock block : group) {
+            block.setCaseIndexHolder(holder);
+          }
         });
   }
 
+  /** Returns how many classes generated for the switch look up a {@link ClassValue}. */
+  private int countCaseIndexes(final SwitchBlock block) {
+    return (block.hasCaseIndexField() ? 1 : 0)
+        + (block.getSwitchMethodElement().getAnnotation(FlowSubscriber.class) != null ? 1 : 0)
+        + (block.getSwitchMethodElement().getAnnotation(Pipeline.class) != null ? 1 : 0);
+  }
+
+  private String formatCaseIndexKey(final SwitchBlock block) {
+    return processingEnv.getElementUtils().getPackageOf(block.typeElement).getQualifiedName()
+        + block
+            .getCaseParameters()
+            .stream()
+            .map(it -> block.getCaseTypeName(it).toString())
+            .collect(Collectors.joining(",", "(", ")"));
+  }
+
+  private void checkDispatchIds(final SwitchBlock block) {
+    if (block.getStrategy() != Switch.Strategy.DISPATCH_ID) {
+      return;
+    }
+    final String name =
+        new AnnotatedClass(processingEnv.getElementUtils(), block.typeElement)
+            .getGeneratedDispatchIdSimpleName();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final TypeElement caseTypeElement = asTypeElement(caseParameter.variableElement.asType());
+      if (caseTypeElement == null || hierarchy.hasSupertypeNamed(caseTypeElement, name) == false) {
+        error(
+            String.format("Case type must implement %s to be dispatched by id", name),
+            caseParameter.variableElement,
+            getAnnotationMirror(caseParameter.variableElement, Case.class));
+      }
+    }
+  }
+
+  /**
+   * Finds the key method of a {@link Pipeline}: a non-private method of the switch class, static
+   * for a static switch, that takes the switch argument and returns something.
+   */
+  private void resolvePipelineKey(final SwitchBlock block) {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final Pipeline pipeline = method.getAnnotation(Pipeline.class);
+    if (pipeline == null || pipeline.key().isEmpty()) {
+      return;
+    }
+    final Types types = processingEnv.getTypeUtils();
+    final TypeMirror argumentType = block.getSwitchParameterElement().asType();
+    final Optional<ExecutableElement> key =
+        ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(block.typeElement))
+            .stream()
+            .filter(it -> it.getSimpleName().contentEquals(pipeline.key()))
+            .filter(it -> it.getParameters().size() == 1)
+            .filter(it -> types.isAssignable(argumentType, it.getParameters().get(0).asType()))
+            .filter(it -> it.getReturnType().getKind() != TypeKind.VOID)
+            .filter(it -> it.getThrownTypes().isEmpty())
+            .filter(it -> isPrivateElement(it) == false)
+            .filter(it -> block.isStatic() == false || isStaticElement(it))
+            .findFirst();
+    if (key.isPresent()) {
+      block.setPipelineKey(key.get());
+      return;
+    }
+    error(
+        String.format(
+            "No key method %s: it must take the @Switch argument, return something, throw no"
+                + " checked exception and be non-private, and static for a static @Switch",
+            pipeline.key()),
+        method,
+        getAnnotationMirror(method, Pipeline.class));
+  }
+
+  private void resolveSplit(final SwitchBlock block) {
+    final int size = new MethodSize(block).estimate();
+    block.setSplit(
+        splitSize > 0
+            && size > splitSize
+            && block.getStrategy() != Switch.Strategy.VISITOR
+            && block.getStrategy() != Switch.Strategy.VALUE);
+    log(
+        String.format(
+            "%s switch method: about %d bytes%s",
+            block.typeElement, size, block.isSplit() ? ", split" : ""));
+    if (block.isSplit() == false && size > MethodSize.HUGE_METHOD_LIMIT * 4 / 5) {
+      warning(
+          String.format(
+              "Switch method is about %d bytes of bytecode, HotSpot does not compile methods"
+                  + " over %d bytes",
+              size, MethodSize.HUGE_METHOD_LIMIT),
+          block.getSwitchParameterElement(),
+          getAnnotationMirror(block.getSwitchParameterElement(), Switch.class));
+    }
+  }
+
   private AnnotationMirror getAnnotationMirror(final Element e, final Class<?> annotationClass) {
     final Name fqn = processingEnv.getElementUtils().getName(annotationClass.getName());
     return e.getAnnotationMirrors()
@@ -214,6 +1428,14 @@ public class DispatchProcessor extends AbstractProcessor {
     }
   }
 
+  private void warning(String msg, Element element, AnnotationMirror annotation) {
+    processingEnv.getMessager().printMessage(Kind.WARNING, msg, element, annotation);
+  }
+
+  private void lint(String msg, Element element, AnnotationMirror annotation) {
+    processingEnv.getMessager().printMessage(lintKind, msg, element, annotation);
+  }
+
   private void error(String msg, Element element, AnnotationMirror annotation) {
     processingEnv.getMessager().printMessage(Kind.ERROR, msg, element, annotation);
   }
@@ -0,0 +1,42 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.IOException;
+
+/** Generates how the switch method of the generated subclass finds and calls the @Case. */
+interface DispatchStrategy {
+  static DispatchStrategy of(final AnnotatedClass ac, final SwitchBlock block) {
+    final DispatchStrategy strategy = ofColdPath(ac, block);
+    return block.getHotClasses() == null ? strategy : new HotColdDispatch(ac, block, strategy);
+  }
+
+  private static DispatchStrategy ofColdPath(final AnnotatedClass ac, final SwitchBlock block) {
+    if (block.isSplit()) {
+      return new SplitDispatch(ac, block);
+    }
+    switch (block.getStrategy()) {
+      case CLASS_VALUE:
+        return new ClassValueDispatch(block);
+      case EXACT_CLASS:
+        return new ExactClassDispatch(ac, block);
+      case VISITOR:
+        return new VisitorDispatch(ac, block);
+      case DISPATCH_ID:
+        return new DispatchIdDispatch(ac, block);
+      case VALUE:
+        return new ValueDispatch(ac, block);
+      default:
+        return new InstanceofDispatch(block);
+    }
+  }
+
+  /** Appends the fields and helper methods of the generated subclass that the body relies on. */
+  default void appendMembers(Appendable w) throws IOException {}
+
+  /** Appends the statements of the switch method. */
+  void appendBody(Appendable w) throws IOException;
+
+  /** Returns true if the members hold dispatch state in static fields. */
+  default boolean hasStaticState() {
+    return false;
+  }
+}
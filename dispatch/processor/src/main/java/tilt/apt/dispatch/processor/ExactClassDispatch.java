@@ -0,0 +1,95 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * Looks up the index of the case for the exact class of the argument in a table worked out at
+ * compile time from the {@link ClosedHierarchy} of the switch type, and switches on it. A few
+ * classes are compared by identity, more are first switched on by name, whose hash the class
+ * caches. A class missing from the table, such as an anonymous class, falls back to the {@link
+ * ClassValue} of {@link ClassValueDispatch}.
+ */
+final class ExactClassDispatch implements DispatchStrategy {
+  static final String METHOD_EXACT_CASE_INDEX = "exactCaseIndex";
+  static final int MAX_IDENTITY_TESTS = 8;
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public ExactClassDispatch(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendMembers(Appendable w) throws IOException {
+    appendExactCaseIndexMethod(w, ac, block);
+  }
+
+  /** Appends the method that maps a class to the index of its case and the fallback it uses. */
+  static void appendExactCaseIndexMethod(
+      Appendable w, final AnnotatedClass ac, final SwitchBlock block) throws IOException {
+    ClassValueDispatch.appendCaseIndexField(w, block);
+    w.append(String.format("private static int %s(final Class<?> type)", METHOD_EXACT_CASE_INDEX));
+    ac.startBlock(w);
+    if (block.getExactClasses().size() <= MAX_IDENTITY_TESTS) {
+      for (final ExactClass exactClass : block.getExactClasses()) {
+        w.append(
+            String.format(
+                "if (type == %s.class) {\n%s}\n",
+                exactClass.name, formatStatement("return " + exactClass.caseIndex)));
+      }
+    } else {
+      w.append("switch (type.getName()) {\n");
+      for (final ExactClass exactClass : block.getExactClasses()) {
+        w.append(String.format("case %s:\n", ac.formatConstant(exactClass.binaryName)));
+        // Another loader may define a class of the same name
+        w.append(
+            String.format(
+                "if (type == %s.class) {\n%s}\n",
+                exactClass.name, formatStatement("return " + exactClass.caseIndex)));
+        w.append(formatStatement("break"));
+      }
+      w.append("}\n");
+    }
+    w.append(
+        formatStatement(
+            String.format("return %s.get(type)", ClassValueDispatch.formatCaseIndexField(block))));
+    ac.endBlock(w);
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    ClassValueDispatch.appendSwitch(w, block, statements, formatCaseIndex(block));
+  }
+
+  /** Returns the expression that looks up the index of the case for the switch argument. */
+  static String formatCaseIndex(final SwitchBlock block) {
+    return String.format(
+        "%1$s == null ? -1 : %2$s(%1$s.getClass())",
+        block.getSwitchParameterName(), METHOD_EXACT_CASE_INDEX);
+  }
+
+  @Override
+  public boolean hasStaticState() {
+    return block.getCaseIndexHolder() == null;
+  }
+
+  /** A class of the table of a {@link Switch.Strategy#EXACT_CLASS} switch and its case. */
+  static final class ExactClass {
+    final String name;
+    final String binaryName;
+    final int caseIndex;
+
+    ExactClass(final String name, final String binaryName, final int caseIndex) {
+      this.name = name;
+      this.binaryName = binaryName;
+      this.caseIndex = caseIndex;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.IOException;
+
+/**
+ * The {@link ClassValue} shared by the switches and flow subscribers of a package that have the
+ * same case types in the same order. Each of them would otherwise load an anonymous subclass of
+ * {@link ClassValue} of its own and resolve the index of every class once more.
+ */
+final class GeneratedCaseIndex implements GeneratedSource {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+
+  public GeneratedCaseIndex(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(String.format("final class %s", ac.getGeneratedCaseIndexSimpleName()));
+    ac.startBlock(w);
+    ClassValueDispatch.appendCaseIndexField(w, block, "static final");
+    w.append(String.format("private %s()", ac.getGeneratedCaseIndexSimpleName()));
+    ac.startBlock(w);
+    ac.endBlock(w);
+    ac.endBlock(w);
+  }
+}
@@ -0,0 +1,37 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+
+/**
+ * The interface of a {@link tilt.apt.dispatch.annotations.Switch.Strategy#DISPATCH_ID} switch, with
+ * one constant per @Case numbered from 0 in the order of the cases, so that the switch on them
+ * compiles to a tableswitch.
+ */
+final class GeneratedDispatchId implements GeneratedSource {
+  static final String METHOD_DISPATCH_ID = "dispatchId";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+
+  public GeneratedDispatchId(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public interface " : "interface ");
+    w.append(ac.getGeneratedDispatchIdSimpleName());
+    ac.startBlock(w);
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(
+          formatStatement(
+              String.format("int %s = %d", block.getDispatchIdName(caseParameter), index++)));
+    }
+    w.append(formatStatement(String.format("int %s()", METHOD_DISPATCH_ID)));
+    ac.endBlock(w);
+  }
+}
@@ -0,0 +1,62 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+import javax.lang.model.element.Modifier;
+
+/**
+ * The final class behind a static @Switch method, whose own body delegates to the generated method
+ * of the same name. Every call from the stub to the @Case is a static call.
+ */
+final class GeneratedDispatcher implements GeneratedSource {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final DispatchStrategy strategy;
+
+  public GeneratedDispatcher(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+    this.strategy = DispatchStrategy.of(ann, block);
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    if (block.isClassTokenSwitch()) {
+      // The cases take Class<A> for a token checked against A at runtime
+      w.append("@SuppressWarnings(\"unchecked\")\n");
+    }
+    w.append(String.format("final class %s", ac.getGeneratedDispatcherSimpleName()));
+    ac.startBlock(w);
+    if (block.getExtensionName() != null) {
+      GeneratedExtension.appendExtensionsField(w, ac);
+    }
+    w.append(String.format("private %s()", ac.getGeneratedDispatcherSimpleName()));
+    ac.startBlock(w);
+    ac.endBlock(w);
+    w.append(ac.formatMethodDecl(block.getSwitchMethodElement(), s -> Stream.of(Modifier.STATIC)));
+    ac.startBlock(w);
+    strategy.appendBody(w);
+    ac.endBlock(w);
+    strategy.appendMembers(w);
+    final LimitedCases limits = new LimitedCases(block);
+    if (limits.isEmpty() == false) {
+      limits.appendMembers(w);
+    }
+    final CoalescingCases coalescing = new CoalescingCases(block);
+    if (coalescing.isEmpty() == false) {
+      coalescing.appendMembers(w);
+    }
+    if (block.getSwitch().handles()) {
+      new GeneratedHandle(ac, block).appendMembers(w);
+    }
+    if (block.getSwitch().warmUp()) {
+      new WarmUp(ac, block).appendMembers(w);
+    }
+    ac.endBlock(w);
+  }
+
+  /** Returns true if the generated class holds dispatch state in static fields. */
+  boolean hasStaticState() {
+    return strategy.hasStaticState();
+  }
+}
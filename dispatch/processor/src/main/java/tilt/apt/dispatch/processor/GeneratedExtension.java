@@ -0,0 +1,59 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+import tilt.apt.dispatch.runtime.CaseExtension;
+import tilt.apt.dispatch.runtime.CaseExtensions;
+
+/**
+ * The extension interface of an extensible switch, implemented by handlers of types that have
+ * no @Case. Handlers are found by a {@link java.util.ServiceLoader} when the generated class is
+ * initialized, or added through the static {@code register} method.
+ */
+final class GeneratedExtension implements GeneratedSource {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+
+  public GeneratedExtension(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public interface " : "interface ");
+    w.append(ac.getGeneratedExtensionSimpleName());
+    w.append(" extends ");
+    w.append(CaseExtension.class.getName());
+    ac.startBlock(w);
+    w.append(
+        formatStatement(ac.formatMethodDecl(block.getSwitchMethodElement(), s -> Stream.empty())));
+    w.append(
+        String.format(
+            "static void register(final %s extension)", ac.getGeneratedExtensionSimpleName()));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format(
+                "%s.%s.register(extension)",
+                block.isStatic()
+                    ? ac.getGeneratedDispatcherSimpleName()
+                    : ac.getGeneratedSubclassSimpleName(),
+                CaseStatements.FIELD_EXTENSIONS)));
+    ac.endBlock(w);
+    ac.endBlock(w);
+  }
+
+  /** Appends the field of the generated subclass or dispatcher that holds the extensions. */
+  static void appendExtensionsField(Appendable w, final AnnotatedClass ac) throws IOException {
+    final String name = ac.getGeneratedExtensionSimpleName();
+    w.append(
+        formatStatement(
+            String.format(
+                "static final %1$s<%2$s> %3$s = %1$s.load(java.util.ServiceLoader.load(%2$s.class,"
+                    + " %2$s.class.getClassLoader()))",
+                CaseExtensions.class.getName(), name, CaseStatements.FIELD_EXTENSIONS)));
+  }
+}
@@ -0,0 +1,392 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.AnnotatedClass.wrapIfNonBlank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import tilt.apt.dispatch.annotations.FlowSubscriber;
+import tilt.apt.dispatch.runtime.DispatchTimer;
+
+/**
+ * The {@link java.util.concurrent.Flow.Subscriber} of a {@link FlowSubscriber} switch. Each batch
+ * is sorted by the index of its case with a counting sort into preallocated arrays, then every case
+ * is called in a loop of its own, so that the call in each loop stays monomorphic.
+ *
+ * <p>The subscriber requests as many items as it dispatched, so the items received and the demand
+ * outstanding always add up to the batch size. With a delay, a timer task hands the partial batch
+ * to an executor. The items then arrive under a lock on the batch array, and are taken out of it
+ * into a second array under the dispatch lock, which is held while the cases are called so that
+ * they are never called concurrently. The lock on the batch array is never held by a case.
+ */
+final class GeneratedFlowSubscriber implements GeneratedSource {
+  static final String FIELD_DISPATCHER = "dispatcher";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+  private final String itemType;
+  private final long maxDelayMillis;
+
+  public GeneratedFlowSubscriber(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+    this.itemType =
+        block
+            .getSwitchParameterElement()
+            .asType()
+            .accept(TypeArgumentName.INSTANCE, new AppendableString())
+            .toString();
+    this.maxDelayMillis = method.getAnnotation(FlowSubscriber.class).maxDelayMillis();
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public final class " : "final class ");
+    w.append(ac.getGeneratedFlowSubscriberSimpleName());
+    w.append(
+        ac.formatTypeParameterElements(ac.getTypeParameterElements(), TypeParameterName.INSTANCE));
+    w.append(String.format(" implements java.util.concurrent.Flow.Subscriber<%s>", itemType));
+    ac.startBlock(w);
+    ClassValueDispatch.appendCaseIndexField(w, block);
+    if (block.isStatic() == false) {
+      w.append(
+          formatStatement(
+              String.format("private final %s %s", ac.getTypeName(), FIELD_DISPATCHER)));
+    }
+    w.append(formatStatement("private final int batchSize"));
+    w.append(formatStatement("private final Object[] batch"));
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("private final Object[] taken"));
+      w.append(formatStatement("private final java.util.concurrent.Executor executor"));
+      w.append(
+          formatStatement(
+              "private final java.util.concurrent.locks.ReentrantLock dispatchLock ="
+                  + " new java.util.concurrent.locks.ReentrantLock()"));
+    }
+    w.append(formatStatement("private final Object[] sorted"));
+    w.append(formatStatement("private final int[] caseIndexes"));
+    w.append(
+        formatStatement(
+            String.format(
+                "private final int[] ends = new int[%d]", block.getCaseParameters().size())));
+    w.append(
+        formatStatement(
+            "private final java.util.concurrent.CompletableFuture<Void> completion ="
+                + " new java.util.concurrent.CompletableFuture<>()"));
+    w.append(formatStatement("private java.util.concurrent.Flow.Subscription subscription"));
+    w.append(formatStatement("private int count"));
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("private int takenCount"));
+      w.append(formatStatement("private long batches"));
+    }
+    appendConstructors(w);
+    appendCompletion(w);
+    appendOnSubscribe(w);
+    appendOnNext(w);
+    appendOnError(w);
+    appendOnComplete(w);
+    appendFlush(w);
+    if (maxDelayMillis > 0) {
+      appendTake(w);
+    }
+    appendDispatchBatch(w);
+    appendDispatch(w);
+    ac.endBlock(w);
+  }
+
+  private void appendConstructors(Appendable w) throws IOException {
+    final String dispatcherParameter =
+        block.isStatic() ? "" : String.format("final %s %s", ac.getTypeName(), FIELD_DISPATCHER);
+    final int batchSize = method.getAnnotation(FlowSubscriber.class).batchSize();
+    w.append(
+        String.format(
+            "public %s(%s)", ac.getGeneratedFlowSubscriberSimpleName(), dispatcherParameter));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format(
+                "this(%s%d)", block.isStatic() ? "" : FIELD_DISPATCHER + ", ", batchSize)));
+    ac.endBlock(w);
+    final List<String> parameters = new ArrayList<>();
+    if (block.isStatic() == false) {
+      parameters.add(dispatcherParameter);
+    }
+    parameters.add("final int batchSize");
+    if (maxDelayMillis > 0) {
+      w.append(
+          String.format(
+              "public %s(%s)",
+              ac.getGeneratedFlowSubscriberSimpleName(), String.join(", ", parameters)));
+      ac.startBlock(w);
+      w.append(
+          formatStatement(
+              String.format(
+                  "this(%sbatchSize, java.util.concurrent.ForkJoinPool.commonPool())",
+                  block.isStatic() ? "" : FIELD_DISPATCHER + ", ")));
+      ac.endBlock(w);
+      parameters.add("final java.util.concurrent.Executor executor");
+    }
+    w.append(
+        String.format(
+            "public %s(%s)",
+            ac.getGeneratedFlowSubscriberSimpleName(), String.join(", ", parameters)));
+    ac.startBlock(w);
+    w.append("if (batchSize <= 0) {\n");
+    w.append(
+        formatStatement(
+            "throw new IllegalArgumentException(\"Batch size must be positive: \" + batchSize)"));
+    w.append("}\n");
+    if (block.isStatic() == false) {
+      w.append(
+          formatStatement(
+              String.format(
+                  "this.%1$s = java.util.Objects.requireNonNull(%1$s)", FIELD_DISPATCHER)));
+    }
+    w.append(formatStatement("this.batchSize = batchSize"));
+    w.append(formatStatement("this.batch = new Object[batchSize]"));
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("this.taken = new Object[batchSize]"));
+      w.append(formatStatement("this.executor = java.util.Objects.requireNonNull(executor)"));
+    }
+    w.append(formatStatement("this.sorted = new Object[batchSize]"));
+    w.append(formatStatement("this.caseIndexes = new int[batchSize]"));
+    ac.endBlock(w);
+  }
+
+  private void appendCompletion(Appendable w) throws IOException {
+    w.append("public java.util.concurrent.CompletableFuture<Void> completion()");
+    ac.startBlock(w);
+    w.append(formatStatement("return completion"));
+    ac.endBlock(w);
+  }
+
+  private void appendOnSubscribe(Appendable w) throws IOException {
+    w.append("@Override\n");
+    w.append("public void onSubscribe(final java.util.concurrent.Flow.Subscription subscription)");
+    ac.startBlock(w);
+    w.append("if (this.subscription != null) {\n");
+    w.append(formatStatement("subscription.cancel()"));
+    w.append(formatStatement("return"));
+    w.append("}\n");
+    w.append(formatStatement("this.subscription = subscription"));
+    w.append(formatStatement("subscription.request(batchSize)"));
+    ac.endBlock(w);
+  }
+
+  private void appendOnNext(Appendable w) throws IOException {
+    w.append("@Override\n");
+    w.append(String.format("public void onNext(final %s item)", itemType));
+    ac.startBlock(w);
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("final boolean full"));
+      w.append("synchronized (batch) {\n");
+    }
+    w.append("if (completion.isDone()) {\n");
+    w.append(formatStatement("return"));
+    w.append("}\n");
+    w.append(formatStatement("batch[count++] = item"));
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("full = count == batchSize"));
+      w.append("if (count == 1 && full == false) {\n");
+      w.append(formatStatement("final long scheduledBatch = batches"));
+      w.append(
+          formatStatement(
+              String.format(
+                  "%s.schedule(() -> flush(scheduledBatch), %dL,"
+                      + " java.util.concurrent.TimeUnit.MILLISECONDS, executor)",
+                  DispatchTimer.class.getCanonicalName(), maxDelayMillis)));
+      w.append("}\n");
+      w.append("}\n");
+      w.append("if (full) {\n");
+      w.append(formatStatement("flush(-1)"));
+    } else {
+      w.append("if (count == batchSize) {\n");
+      w.append(formatStatement("flush()"));
+    }
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  private void appendOnError(Appendable w) throws IOException {
+    w.append("@Override\n");
+    w.append("public void onError(final Throwable throwable)");
+    ac.startBlock(w);
+    if (maxDelayMillis > 0) {
+      w.append("synchronized (batch) {\n");
+    }
+    w.append(formatStatement("java.util.Arrays.fill(batch, 0, count, null)"));
+    w.append(formatStatement("count = 0"));
+    w.append(formatStatement("completion.completeExceptionally(throwable)"));
+    if (maxDelayMillis > 0) {
+      w.append("}\n");
+    }
+    ac.endBlock(w);
+  }
+
+  private void appendOnComplete(Appendable w) throws IOException {
+    w.append("@Override\n");
+    w.append("public void onComplete()");
+    ac.startBlock(w);
+    if (maxDelayMillis > 0) {
+      w.append(formatStatement("dispatchLock.lock()"));
+      w.append("try {\n");
+      w.append("if (take(-1) >= 0 && dispatchBatch()) {\n");
+      w.append(formatStatement("completion.complete(null)"));
+      w.append("}\n");
+      w.append("} finally {\n");
+      w.append(formatStatement("dispatchLock.unlock()"));
+      w.append("}\n");
+    } else {
+      w.append("if (completion.isDone() == false && dispatchBatch()) {\n");
+      w.append(formatStatement("completion.complete(null)"));
+      w.append("}\n");
+    }
+    ac.endBlock(w);
+  }
+
+  /**
+   * Appends the method that dispatches the batch and requests as many items. With a delay, it takes
+   * the batch out first, and the timer task calls it with the batch it was scheduled for, which is
+   * only taken if it is still waiting.
+   */
+  private void appendFlush(Appendable w) throws IOException {
+    if (maxDelayMillis > 0) {
+      w.append("private void flush(final long scheduledBatch)");
+      ac.startBlock(w);
+      w.append(formatStatement("dispatchLock.lock()"));
+      w.append("try {\n");
+      w.append(formatStatement("final int dispatched = take(scheduledBatch)"));
+      w.append("if (dispatched > 0 && dispatchBatch()) {\n");
+      w.append(formatStatement("subscription.request(dispatched)"));
+      w.append("}\n");
+      w.append("} finally {\n");
+      w.append(formatStatement("dispatchLock.unlock()"));
+      w.append("}\n");
+      ac.endBlock(w);
+      return;
+    }
+    w.append("private void flush()");
+    ac.startBlock(w);
+    w.append(formatStatement("final int dispatched = count"));
+    w.append("if (dispatchBatch()) {\n");
+    w.append(formatStatement("subscription.request(dispatched)"));
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  /**
+   * Appends the method that moves the items of the batch to the taken array, unless the subscriber
+   * is done or the batch is not the scheduled one, a negative number for any. Returns the number of
+   * items taken, or -1.
+   */
+  private void appendTake(Appendable w) throws IOException {
+    w.append("private int take(final long scheduledBatch)");
+    ac.startBlock(w);
+    w.append("synchronized (batch) {\n");
+    w.append("if (completion.isDone() || (scheduledBatch >= 0 && scheduledBatch != batches)) {\n");
+    w.append(formatStatement("return -1"));
+    w.append("}\n");
+    w.append(formatStatement("System.arraycopy(batch, 0, taken, 0, count)"));
+    w.append(formatStatement("java.util.Arrays.fill(batch, 0, count, null)"));
+    w.append(formatStatement("takenCount = count"));
+    w.append(formatStatement("count = 0"));
+    w.append(formatStatement("batches++"));
+    w.append(formatStatement("return takenCount"));
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  /** Appends the method that dispatches the batch and cancels the subscription if a case fails. */
+  private void appendDispatchBatch(Appendable w) throws IOException {
+    w.append("private boolean dispatchBatch()");
+    ac.startBlock(w);
+    w.append("try {\n");
+    w.append(formatStatement("dispatch()"));
+    w.append(formatStatement("return true"));
+    w.append("} catch (Throwable e) {\n");
+    w.append(formatStatement("subscription.cancel()"));
+    w.append(formatStatement("completion.completeExceptionally(e)"));
+    w.append(formatStatement("return false"));
+    w.append("} finally {\n");
+    w.append(
+        formatStatement(String.format("java.util.Arrays.fill(%s, 0, %s, null)", items(), count())));
+    w.append(formatStatement(String.format("java.util.Arrays.fill(sorted, 0, %s, null)", count())));
+    w.append(formatStatement(String.format("%s = 0", count())));
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  private void appendDispatch(Appendable w) throws IOException {
+    w.append("private void dispatch()");
+    w.append(wrapIfNonBlank(ac.formatMethodThrows(method), " ", ""));
+    ac.startBlock(w);
+    w.append(formatStatement("java.util.Arrays.fill(ends, 0)"));
+    w.append(String.format("for (int i = 0; i < %s; i++) {\n", count()));
+    w.append(
+        formatStatement(
+            String.format(
+                "final int index = %s.get(%s[i].getClass())",
+                ClassValueDispatch.formatCaseIndexField(block), items())));
+    w.append(formatStatement("caseIndexes[i] = index"));
+    w.append("if (index >= 0) {\n");
+    w.append(formatStatement("ends[index]++"));
+    if (new CaseStatements(block).isVoid() == false) {
+      w.append("} else {\n");
+      w.append(
+          formatStatement(
+              String.format(
+                  "throw new IllegalArgumentException(\"No @Case for \" + %s[i])", items())));
+    }
+    w.append("}\n");
+    w.append("}\n");
+    // Turns the counts into the start of each case, then into its end while sorting
+    w.append(formatStatement("int start = 0"));
+    w.append("for (int index = 0; index < ends.length; index++) {\n");
+    w.append(formatStatement("final int size = ends[index]"));
+    w.append(formatStatement("ends[index] = start"));
+    w.append(formatStatement("start += size"));
+    w.append("}\n");
+    w.append(String.format("for (int i = 0; i < %s; i++) {\n", count()));
+    w.append("if (caseIndexes[i] >= 0) {\n");
+    w.append(formatStatement(String.format("sorted[ends[caseIndexes[i]]++] = %s[i]", items())));
+    w.append("}\n");
+    w.append("}\n");
+    w.append(formatStatement("int i = 0"));
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(String.format("for (; i < ends[%d]; i++) {\n", index++));
+      w.append(formatStatement(formatCall(caseParameter)));
+      w.append("}\n");
+    }
+    ac.endBlock(w);
+  }
+
+  /** Returns the array of the items being dispatched, which a delay takes out of the batch. */
+  private String items() {
+    return maxDelayMillis > 0 ? "taken" : "batch";
+  }
+
+  private String count() {
+    return maxDelayMillis > 0 ? "takenCount" : "count";
+  }
+
+  /**
+   * Returns the call of a case for the current item. A memoized switch is called through the switch
+   * method, so that its results are cached.
+   */
+  private String formatCall(final ParameterInMethod caseParameter) {
+    final String receiver =
+        block.isStatic()
+            ? caseParameter.getTypeElement().getQualifiedName().toString()
+            : FIELD_DISPATCHER;
+    return String.format(
+        "%s.%s((%s) sorted[i])",
+        receiver,
+        block.getMemoize() == null ? caseParameter.getMethodName() : method.getSimpleName(),
+        caseParameter.getParameterTypeName());
+  }
+}
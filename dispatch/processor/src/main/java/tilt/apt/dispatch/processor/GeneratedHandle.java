@@ -0,0 +1,220 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.AnnotatedClass.wrapIfNonBlank;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * The handle interface of a switch with {@link Switch#handles()}: the switch method with the switch
+ * parameter narrowed to a type argument. A handle resolved for a class calls the @Case of that
+ * class without testing the argument again, so a caller that knows the class of its arguments
+ * resolves once and calls the handle in its loop. A class that a subclass could take to another
+ * case, because a case type is a proper subtype of it or is an interface it does not implement,
+ * resolves to the switch method instead.
+ */
+final class GeneratedHandle implements GeneratedSource {
+  static final String METHOD_RESOLVE = "resolve";
+  static final String FIELD_HANDLES = "handles";
+  static final String FIELD_STATIC_HANDLES = "HANDLES";
+  private static final String TYPE_VARIABLE = "A";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+
+  public GeneratedHandle(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public interface " : "interface ");
+    w.append(String.format("%s<%s>", ac.getGeneratedHandleSimpleName(), formatTypeVariable()));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format(
+                "%s %s(%s)%s",
+                method.getReturnType().accept(TypeArgumentName.INSTANCE, new AppendableString()),
+                method.getSimpleName(),
+                method
+                    .getParameters()
+                    .stream()
+                    .map(this::formatParameter)
+                    .collect(Collectors.joining(", ")),
+                wrapIfNonBlank(ac.formatMethodThrows(method), " ", ""))));
+    final List<String> parameters = new ArrayList<>();
+    if (block.isStatic() == false) {
+      parameters.add(String.format("final %s dispatcher", ac.getTypeName()));
+    }
+    parameters.add(String.format("final Class<%s> type", TYPE_VARIABLE));
+    w.append(
+        String.format(
+            "static <%s> %s %s(%s)",
+            formatTypeVariable(),
+            formatHandleType(),
+            METHOD_RESOLVE,
+            String.join(", ", parameters)));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            block.isStatic()
+                ? String.format(
+                    "return %s.%s(type)", ac.getGeneratedDispatcherSimpleName(), METHOD_RESOLVE)
+                : String.format(
+                    "return ((%s) dispatcher).%s(type)",
+                    ac.getGeneratedSubclassSimpleName(), METHOD_RESOLVE)));
+    ac.endBlock(w);
+    ac.endBlock(w);
+  }
+
+  /**
+   * Appends the handles of the cases, created once per dispatcher, and the method that resolves
+   * them to the generated subclass or dispatcher. The last handle calls the switch method, for a
+   * class without a case, for a class whose subclasses may take another case and for a memoized
+   * switch, and so does the handle of a case with a limit or that coalesces.
+   */
+  void appendMembers(Appendable w) throws IOException {
+    final CaseStatements statements = new CaseStatements(block);
+    final String arguments =
+        method
+            .getParameters()
+            .stream()
+            .map(it -> it.getSimpleName().toString())
+            .collect(Collectors.joining(", ", "(", ")"));
+    final String switchCall = arguments + " -> " + method.getSimpleName() + arguments;
+    final List<String> handles = new ArrayList<>();
+    if (block.getMemoize() == null) {
+      for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+        handles.add(
+            LimitedCases.getLimit(caseParameter) > 0
+                    || CoalescingCases.isCoalescing(caseParameter)
+                    || Interceptors.isIntercepted(block, caseParameter)
+                ? switchCall
+                : arguments + " -> " + statements.formatCall(caseParameter));
+      }
+    }
+    handles.add(switchCall);
+    w.append(
+        formatStatement(
+            String.format(
+                "private %sfinal %s<?>[] %s = {%s}",
+                block.isStatic() ? "static " : "",
+                ac.getGeneratedHandleSimpleName(),
+                formatHandlesField(),
+                String.join(", ", handles))));
+    w.append("@SuppressWarnings(\"unchecked\")\n");
+    w.append(
+        String.format(
+            "%s<%s> %s %s(final Class<%s> type)",
+            block.isStatic() ? "static " : "",
+            formatTypeVariable(),
+            formatHandleType(),
+            METHOD_RESOLVE,
+            TYPE_VARIABLE));
+    ac.startBlock(w);
+    if (block.getMemoize() != null) {
+      w.append(
+          formatStatement(
+              String.format("return (%s) %s[0]", formatHandleType(), formatHandlesField())));
+      ac.endBlock(w);
+      return;
+    }
+    w.append(String.format("if (%s) {\n", formatNarrowedCondition()));
+    w.append(
+        formatStatement(
+            String.format(
+                "return (%1$s) %2$s[%2$s.length - 1]", formatHandleType(), formatHandlesField())));
+    w.append("}\n");
+    if (block.hasCaseIndexField()) {
+      w.append(
+          formatStatement(
+              String.format(
+                  "final int index = %s.get(type)",
+                  ClassValueDispatch.formatCaseIndexField(block))));
+      w.append(
+          formatStatement(
+              String.format(
+                  "return (%1$s) %2$s[index < 0 ? %2$s.length - 1 : index]",
+                  formatHandleType(), formatHandlesField())));
+    } else {
+      int index = 0;
+      for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+        w.append(
+            String.format(
+                "if (%s.class.isAssignableFrom(type)) {\n%s}\n",
+                block.getCaseTypeName(caseParameter),
+                formatStatement(
+                    String.format(
+                        "return (%s) %s[%d]", formatHandleType(), formatHandlesField(), index++))));
+      }
+      w.append(
+          formatStatement(
+              String.format(
+                  "return (%1$s) %2$s[%2$s.length - 1]",
+                  formatHandleType(), formatHandlesField())));
+    }
+    ac.endBlock(w);
+  }
+
+  /**
+   * Returns the condition on the resolved class under which an argument of a subclass may take
+   * another case than the class itself: a case type is a proper subtype of the class, or the class
+   * is not final and does not implement an interface of a case.
+   */
+  private String formatNarrowedCondition() {
+    final List<String> conditions = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final String caseClass = block.getCaseTypeName(caseParameter) + ".class";
+      final TypeElement caseTypeElement = asTypeElement(block.getCaseType(caseParameter));
+      conditions.add(
+          caseTypeElement != null && caseTypeElement.getKind() == ElementKind.INTERFACE
+              ? String.format(
+                  "%1$s.isAssignableFrom(type) == false"
+                      + " && (type.isAssignableFrom(%1$s)"
+                      + " || java.lang.reflect.Modifier.isFinal(type.getModifiers()) == false)",
+                  caseClass)
+              : String.format("type != %1$s && type.isAssignableFrom(%1$s)", caseClass));
+    }
+    return conditions.stream().map(it -> "(" + it + ")").collect(Collectors.joining("\n|| "));
+  }
+
+  private String formatHandlesField() {
+    return block.isStatic() ? FIELD_STATIC_HANDLES : FIELD_HANDLES;
+  }
+
+  private String formatTypeVariable() {
+    return String.format(
+        "%s extends %s",
+        TYPE_VARIABLE,
+        block
+            .getSwitchParameterElement()
+            .asType()
+            .accept(TypeArgumentName.INSTANCE, new AppendableString()));
+  }
+
+  private String formatHandleType() {
+    return String.format("%s<%s>", ac.getGeneratedHandleSimpleName(), TYPE_VARIABLE);
+  }
+
+  private String formatParameter(final VariableElement parameter) {
+    return String.format(
+        "%s %s",
+        parameter.getSimpleName().equals(block.getSwitchParameterName())
+            ? TYPE_VARIABLE
+            : parameter.asType().accept(TypeArgumentName.INSTANCE, new AppendableString()),
+        parameter.getSimpleName());
+  }
+}
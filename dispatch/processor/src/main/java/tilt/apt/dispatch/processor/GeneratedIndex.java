@@ -0,0 +1,198 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import tilt.apt.dispatch.runtime.DispatchIndex;
+
+/**
+ * Collects the dispatchers of all rounds into a single {@link DispatchIndex#RESOURCE}. An
+ * incremental compile finds the resource of the previous compile in the class output, and keeps its
+ * lines for the classes that were not compiled again and still exist.
+ */
+final class GeneratedIndex {
+  private final Elements elements;
+  private final Types types;
+  private final Map<String, String> lines;
+  private final Set<String> compiled = new HashSet<>();
+
+  public GeneratedIndex(final Elements elements, final Types types) {
+    this.elements = elements;
+    this.types = types;
+    this.lines = new TreeMap<>();
+  }
+
+  /** Records the top-level types compiled in a round, whose previous lines are replaced. */
+  void addCompiled(final Set<? extends Element> rootElements) {
+    for (final TypeElement typeElement : ElementFilter.typesIn(rootElements)) {
+      compiled.add(typeElement.getQualifiedName().toString());
+    }
+  }
+
+  void add(final AnnotatedClass ac, final SwitchBlock block, final boolean hasFactories) {
+    final List<String> factories = new ArrayList<>();
+    if (hasFactories) {
+      for (final ExecutableElement constructor : ac.getAccessibleConstructors()) {
+        factories.add(formatFactoryMethod("newInstance", constructor));
+      }
+      if (block.isSingleton()) {
+        factories.add("instance()");
+      }
+    }
+    lines.put(
+        ac.getBinaryName(),
+        String.join(
+            "\t",
+            ac.getBinaryName(),
+            ac.getGeneratedSwitchBinaryName(block),
+            String.join(" ", factories),
+            block
+                .getCaseParameters()
+                .stream()
+                .map(it -> formatBinaryName(elements, types, block.getCaseType(it)))
+                .collect(Collectors.joining(" "))));
+  }
+
+  void write(final Filer filer) throws IOException {
+    final Map<String, String> merged = new TreeMap<>();
+    if (readPrevious(filer, merged) == false && lines.isEmpty()) {
+      return;
+    }
+    merged.putAll(lines);
+    final FileObject fileObject =
+        filer.createResource(StandardLocation.CLASS_OUTPUT, "", DispatchIndex.RESOURCE);
+    try (final Writer w =
+        new OutputStreamWriter(fileObject.openOutputStream(), StandardCharsets.UTF_8)) {
+      w.write(DispatchIndex.HEADER + DispatchIndex.VERSION + "\n");
+      for (final String line : merged.values()) {
+        w.write(line);
+        w.write("\n");
+      }
+    }
+  }
+
+  /**
+   * Reads the lines of the previous index that still apply into the map, returning true if it
+   * dropped any.
+   */
+  private boolean readPrevious(final Filer filer, final Map<String, String> previous) {
+    final List<String> previousLines;
+    try {
+      final FileObject fileObject =
+          filer.getResource(StandardLocation.CLASS_OUTPUT, "", DispatchIndex.RESOURCE);
+      try (final BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(fileObject.openInputStream(), StandardCharsets.UTF_8))) {
+        previousLines = reader.lines().collect(Collectors.toList());
+      }
+    } catch (final IOException e) {
+      // No previous index
+      return false;
+    }
+    if (previousLines.isEmpty()
+        || previousLines.get(0).equals(DispatchIndex.HEADER + DispatchIndex.VERSION) == false) {
+      return previousLines.isEmpty() == false;
+    }
+    boolean dropped = false;
+    for (final String line : previousLines.subList(1, previousLines.size())) {
+      if (line.isBlank()) {
+        continue;
+      }
+      final String annotatedClass = line.substring(0, Math.max(0, line.indexOf('\t')));
+      if (isCurrent(annotatedClass)) {
+        previous.put(annotatedClass, line);
+      } else {
+        dropped = true;
+      }
+    }
+    return dropped;
+  }
+
+  /** Returns true if the annotated class exists and was not compiled again. */
+  private boolean isCurrent(final String binaryName) {
+    Element e = elements.getTypeElement(binaryName.replace('$', '.'));
+    if (e == null) {
+      return false;
+    }
+    while (e.getEnclosingElement() instanceof TypeElement) {
+      e = e.getEnclosingElement();
+    }
+    return compiled.contains(((TypeElement) e).getQualifiedName().toString()) == false;
+  }
+
+  private String formatFactoryMethod(final String name, final ExecutableElement constructor) {
+    return constructor
+        .getParameters()
+        .stream()
+        .map(it -> formatBinaryName(elements, types, it.asType()))
+        .collect(Collectors.joining(",", name + "(", ")"));
+  }
+
+  /**
+   * Returns the name of the erasure as Class.getName returns it: the binary name of a class, the
+   * keyword of a primitive type, or the descriptor of an array type, e.g. {@code
+   * [Ljava.lang.String;}. Class.forName accepts all but the primitive types.
+   */
+  static String formatBinaryName(
+      final Elements elements, final Types types, final TypeMirror typeMirror) {
+    final TypeMirror erasure = types.erasure(typeMirror);
+    if (erasure.getKind() == TypeKind.ARRAY) {
+      return "[" + formatComponentName(elements, types, ((ArrayType) erasure).getComponentType());
+    }
+    final TypeElement typeElement = asTypeElement(erasure);
+    if (typeElement != null) {
+      return elements.getBinaryName(typeElement).toString();
+    }
+    return erasure.toString();
+  }
+
+  private static String formatComponentName(
+      final Elements elements, final Types types, final TypeMirror component) {
+    switch (component.getKind()) {
+      case ARRAY:
+        return formatBinaryName(elements, types, component);
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      default:
+        return "L" + formatBinaryName(elements, types, component) + ";";
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.GeneratedIndex.formatBinaryName;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import tilt.apt.dispatch.runtime.DispatchIndex;
+
+/**
+ * Collects the GraalVM native-image configuration of all rounds into META-INF/native-image.
+ *
+ * <p>The generated dispatch code itself does not use reflection. The reflection entries make the
+ * classes and factory methods named by the {@link DispatchIndex} loadable in an image. The shared
+ * case index holders, which reference no user code but class literals, are initialized at build
+ * time, so that their tables are part of the image heap.
+ *
+ * <p>The generated subclasses and dispatchers with static dispatch state are initialized at build
+ * time only on request, since that initializes their superclasses, including the annotated classes
+ * with their static initializers, and runs the lookup of extensions at build time as well.
+ */
+final class GeneratedNativeImageConfig {
+  private final Elements elements;
+  private final Types types;
+  private final String directory;
+  private final Map<String, String> reflectEntries;
+  private final Set<String> buildTimeClasses;
+  private final boolean buildTimeDispatchers;
+
+  public GeneratedNativeImageConfig(
+      final Elements elements,
+      final Types types,
+      final String directory,
+      final boolean buildTimeDispatchers) {
+    this.elements = elements;
+    this.types = types;
+    this.directory = "META-INF/native-image/" + directory;
+    this.reflectEntries = new TreeMap<>();
+    this.buildTimeClasses = new TreeSet<>();
+    this.buildTimeDispatchers = buildTimeDispatchers;
+  }
+
+  void add(
+      final AnnotatedClass ac,
+      final SwitchBlock block,
+      final boolean hasFactories,
+      final boolean hasStaticState) {
+    final StringBuilder methods = new StringBuilder();
+    if (hasFactories) {
+      for (final ExecutableElement constructor : ac.getAccessibleConstructors()) {
+        appendMethod(methods, "newInstance", formatParameterTypes(constructor));
+      }
+      if (block.isSingleton()) {
+        appendMethod(methods, "instance", "");
+      }
+    }
+    reflectEntries.put(ac.getBinaryName(), formatEntry(ac.getBinaryName()));
+    if (hasFactories) {
+      reflectEntries.put(
+          ac.getGeneratedSuperclassBinaryName(),
+          String.format(
+              "  {\"name\": \"%s\", \"methods\": [%s]}",
+              ac.getGeneratedSuperclassBinaryName(), methods.toString()));
+    }
+    final String generatedName = ac.getGeneratedSwitchBinaryName(block);
+    reflectEntries.put(generatedName, formatEntry(generatedName));
+    if (hasStaticState && buildTimeDispatchers) {
+      buildTimeClasses.add(generatedName);
+    }
+  }
+
+  /** Adds a generated class that holds dispatch state in static fields and no user code. */
+  void addStaticState(final String binaryName) {
+    buildTimeClasses.add(binaryName);
+  }
+
+  boolean isEmpty() {
+    return reflectEntries.isEmpty();
+  }
+
+  void write(final Filer filer) throws IOException {
+    write(
+        filer,
+        "reflect-config.json",
+        reflectEntries.values().stream().collect(Collectors.joining(",\n", "[\n", "\n]\n")));
+    write(
+        filer,
+        "resource-config.json",
+        String.format(
+            "{\n  \"resources\": {\n    \"includes\": [{\"pattern\": \"\\\\Q%s\\\\E\"}]\n  }\n}\n",
+            DispatchIndex.RESOURCE));
+    if (buildTimeClasses.isEmpty() == false) {
+      write(
+          filer,
+          "native-image.properties",
+          String.format(
+              "Args = --initialize-at-build-time=%s\n", String.join(",", buildTimeClasses)));
+    }
+  }
+
+  private void write(final Filer filer, final String name, final String content)
+      throws IOException {
+    final FileObject fileObject =
+        filer.createResource(StandardLocation.CLASS_OUTPUT, "", directory + "/" + name);
+    try (final Writer w =
+        new OutputStreamWriter(fileObject.openOutputStream(), StandardCharsets.UTF_8)) {
+      w.write(content);
+    }
+  }
+
+  private static String formatEntry(final String name) {
+    return String.format("  {\"name\": \"%s\"}", name);
+  }
+
+  private String formatParameterTypes(final ExecutableElement executableElement) {
+    return executableElement
+        .getParameters()
+        .stream()
+        .map(it -> String.format("\"%s\"", formatBinaryName(elements, types, it.asType())))
+        .collect(Collectors.joining(", "));
+  }
+
+  private static void appendMethod(
+      final StringBuilder methods, final String name, final String parameterTypes) {
+    if (methods.length() > 0) {
+      methods.append(", ");
+    }
+    methods.append(
+        String.format("{\"name\": \"%s\", \"parameterTypes\": [%s]}", name, parameterTypes));
+  }
+}
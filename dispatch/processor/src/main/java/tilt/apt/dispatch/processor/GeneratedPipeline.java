@@ -0,0 +1,213 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import tilt.apt.dispatch.annotations.Pipeline;
+import tilt.apt.dispatch.runtime.CasePipeline;
+
+/**
+ * The {@link Pipeline} of a switch: a {@link CasePipeline} with a buffer per case and stripe. The
+ * publisher finds the index of the case once, and the consumer calls the case of a whole batch in a
+ * loop of its own, so that the call in each loop stays monomorphic.
+ */
+final class GeneratedPipeline implements GeneratedSource {
+  static final String FIELD_DISPATCHER = "dispatcher";
+  static final String FIELD_PIPELINE = "pipeline";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+  private final Pipeline pipeline;
+  private final String itemType;
+
+  public GeneratedPipeline(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+    this.pipeline = method.getAnnotation(Pipeline.class);
+    this.itemType =
+        block
+            .getSwitchParameterElement()
+            .asType()
+            .accept(TypeArgumentName.INSTANCE, new AppendableString())
+            .toString();
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public final class " : "final class ");
+    w.append(ac.getGeneratedPipelineSimpleName());
+    w.append(
+        ac.formatTypeParameterElements(ac.getTypeParameterElements(), TypeParameterName.INSTANCE));
+    w.append(" implements AutoCloseable");
+    ac.startBlock(w);
+    ClassValueDispatch.appendCaseIndexField(w, block);
+    if (block.isStatic() == false) {
+      w.append(
+          formatStatement(
+              String.format("private final %s %s", ac.getTypeName(), FIELD_DISPATCHER)));
+    }
+    w.append(
+        formatStatement(
+            String.format(
+                "private final %s %s", CasePipeline.class.getCanonicalName(), FIELD_PIPELINE)));
+    appendConstructors(w);
+    appendOffer(w);
+    appendPublish(w);
+    appendAccessors(w);
+    appendDrain(w);
+    ac.endBlock(w);
+  }
+
+  private void appendConstructors(Appendable w) throws IOException {
+    final String dispatcherParameter =
+        block.isStatic() ? "" : String.format("final %s %s", ac.getTypeName(), FIELD_DISPATCHER);
+    w.append(
+        String.format("public %s(%s)", ac.getGeneratedPipelineSimpleName(), dispatcherParameter));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format(
+                "this(%s%s.daemonThreads(\"%s\"))",
+                block.isStatic() ? "" : FIELD_DISPATCHER + ", ",
+                CasePipeline.class.getCanonicalName(),
+                ac.getGeneratedPipelineSimpleName())));
+    ac.endBlock(w);
+    final List<String> parameters = new ArrayList<>();
+    if (block.isStatic() == false) {
+      parameters.add(dispatcherParameter);
+    }
+    parameters.add("final java.util.concurrent.ThreadFactory threads");
+    w.append(
+        String.format(
+            "public %s(%s)", ac.getGeneratedPipelineSimpleName(), String.join(", ", parameters)));
+    ac.startBlock(w);
+    if (block.isStatic() == false) {
+      w.append(
+          formatStatement(
+              String.format(
+                  "this.%1$s = java.util.Objects.requireNonNull(%1$s)", FIELD_DISPATCHER)));
+    }
+    w.append(
+        formatStatement(
+            String.format(
+                "this.%s = new %s(%d, %d, %d, %d, this::drain, threads)",
+                FIELD_PIPELINE,
+                CasePipeline.class.getCanonicalName(),
+                block.getCaseParameters().size(),
+                pipeline.stripes(),
+                pipeline.capacity(),
+                pipeline.batchSize())));
+    ac.endBlock(w);
+  }
+
+  /** Appends the method that adds an item to its buffer unless the buffer is full. */
+  private void appendOffer(Appendable w) throws IOException {
+    w.append(String.format("public boolean offer(final %s item)", itemType));
+    ac.startBlock(w);
+    appendCaseIndex(w, "return true");
+    w.append(
+        formatStatement(String.format("return %s.offer(%s)", FIELD_PIPELINE, formatArguments())));
+    ac.endBlock(w);
+  }
+
+  /** Appends the method that adds an item to its buffer and waits for room. */
+  private void appendPublish(Appendable w) throws IOException {
+    w.append(
+        String.format("public void publish(final %s item) throws InterruptedException", itemType));
+    ac.startBlock(w);
+    appendCaseIndex(w, "return");
+    w.append(formatStatement(String.format("%s.put(%s)", FIELD_PIPELINE, formatArguments())));
+    ac.endBlock(w);
+  }
+
+  /** Appends the lookup of the case of the item, which returns early if there is none. */
+  private void appendCaseIndex(Appendable w, final String noCase) throws IOException {
+    w.append(
+        formatStatement(
+            String.format(
+                "final int index = item == null ? -1 : %s.get(item.getClass())",
+                ClassValueDispatch.formatCaseIndexField(block))));
+    w.append("if (index < 0) {\n");
+    w.append(formatStatement(noCase));
+    w.append("}\n");
+  }
+
+  private void appendAccessors(Appendable w) throws IOException {
+    w.append(String.format("public %s pipeline()", CasePipeline.class.getCanonicalName()));
+    ac.startBlock(w);
+    w.append(formatStatement("return " + FIELD_PIPELINE));
+    ac.endBlock(w);
+    w.append("@Override\n");
+    w.append("public void close()");
+    ac.startBlock(w);
+    w.append(formatStatement(FIELD_PIPELINE + ".close()"));
+    ac.endBlock(w);
+  }
+
+  private void appendDrain(Appendable w) throws IOException {
+    w.append(
+        "private void drain(final int caseIndex, final Object[] batch, final int count,"
+            + " final java.util.function.Consumer<Throwable> failed)");
+    ac.startBlock(w);
+    w.append("switch (caseIndex) {\n");
+    int index = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(String.format("case %d:\n", index++));
+      w.append("for (int i = 0; i < count; i++) {\n");
+      // An element whose case throws, checked or not, is reported and the batch goes on
+      w.append("try {\n");
+      w.append(formatStatement(formatCall(caseParameter)));
+      w.append("} catch (Throwable e) {\n");
+      w.append(formatStatement("failed.accept(e)"));
+      w.append("}\n");
+      w.append("}\n");
+      w.append(formatStatement("break"));
+    }
+    w.append("default:\n");
+    w.append(
+        formatStatement("throw new IllegalArgumentException(\"No @Case for index \" + caseIndex)"));
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  /**
+   * Returns the arguments of {@link CasePipeline#offer}, with the hash of the key if there is one.
+   */
+  private String formatArguments() {
+    final ExecutableElement key = block.getPipelineKey();
+    if (key == null) {
+      return "index, item";
+    }
+    final String call =
+        String.format(
+            "%s.%s(item)",
+            block.isStatic() ? block.typeElement.getQualifiedName() : FIELD_DISPATCHER,
+            key.getSimpleName());
+    switch (key.getReturnType().getKind()) {
+      case INT:
+      case SHORT:
+      case CHAR:
+      case BYTE:
+        return String.format("index, %s, item", call);
+      case LONG:
+        return String.format("index, Long.hashCode(%s), item", call);
+      default:
+        return String.format("index, java.util.Objects.hashCode(%s), item", call);
+    }
+  }
+
+  private String formatCall(final ParameterInMethod caseParameter) {
+    final String receiver =
+        block.isStatic()
+            ? caseParameter.getTypeElement().getQualifiedName().toString()
+            : FIELD_DISPATCHER;
+    return String.format(
+        "%s.%s((%s) batch[i])",
+        receiver, caseParameter.getMethodName(), caseParameter.getParameterTypeName());
+  }
+}
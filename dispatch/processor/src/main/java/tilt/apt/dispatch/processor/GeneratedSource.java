@@ -0,0 +1,8 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.IOException;
+
+interface GeneratedSource {
+  /** Appends the declaration of the generated type, without the package statement. */
+  void append(Appendable w) throws IOException;
+}
@@ -4,34 +4,101 @@ import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
 import static tilt.apt.dispatch.processor.AnnotatedClass.wrapIfNonBlank;
 
 import java.io.IOException;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import tilt.apt.dispatch.annotations.Switch;
 
-final class GeneratedSubclass {
+final class GeneratedSubclass implements GeneratedSource {
   private final AnnotatedClass ac;
   private final SwitchBlock block;
+  private final DispatchStrategy strategy;
+  private final MemoizedSwitch memoized;
+  private final LimitedCases limits;
+  private final CoalescingCases coalescing;
 
   public GeneratedSubclass(final AnnotatedClass ann, final SwitchBlock block) {
     this.ac = ann;
     this.block = block;
+    this.strategy = DispatchStrategy.of(ann, block);
+    this.memoized = block.getMemoize() == null ? null : new MemoizedSwitch(block);
+    this.limits = new LimitedCases(block);
+    this.coalescing = new CoalescingCases(block);
   }
 
-  void append(Appendable w) throws IOException {
+  @Override
+  public void append(Appendable w) throws IOException {
     appendClassDecl(w);
     ac.startBlock(w);
+    if (block.isSingleton()) {
+      appendInstanceField(w);
+    }
+    if (block.getExtensionName() != null) {
+      GeneratedExtension.appendExtensionsField(w, ac);
+    }
     for (final ExecutableElement constructor : ac.getAccessibleConstructors()) {
       appendConstructor(w, constructor);
     }
     appendMethodImpl(w);
+    strategy.appendMembers(w);
+    if (memoized != null) {
+      memoized.appendMembers(w);
+    }
+    if (limits.isEmpty() == false) {
+      limits.appendMembers(w);
+    }
+    if (coalescing.isEmpty() == false) {
+      coalescing.appendMembers(w);
+    }
+    if (block.getSwitch().handles()) {
+      new GeneratedHandle(ac, block).appendMembers(w);
+    }
+    if (block.getSwitch().warmUp()) {
+      new WarmUp(ac, block).appendMembers(w);
+    }
     ac.endBlock(w);
   }
 
+  /** Returns true if the generated subclass holds dispatch state in static fields. */
+  boolean hasStaticState() {
+    return block.isSingleton() || strategy.hasStaticState();
+  }
+
   private void appendClassDecl(Appendable w) throws IOException {
+    if (block.isClassTokenSwitch()) {
+      // The cases take Class<A> for a token checked against A at runtime
+      w.append("@SuppressWarnings(\"unchecked\")\n");
+    }
     w.append(String.format("final class %s", ac.getGeneratedSubclassSimpleName()));
     w.append(
         ac.formatTypeParameterElements(ac.getTypeParameterElements(), TypeParameterName.INSTANCE));
     w.append(wrapIfNonBlank(formatExtends(), " ", ""));
+    final List<String> interfaces = new ArrayList<>();
+    if (block.getStrategy() == Switch.Strategy.VISITOR) {
+      interfaces.add(GeneratedVisitor.formatVisitorType(ac));
+    }
+    if (memoized != null) {
+      interfaces.add(MemoizedSwitch.formatInterfaceName());
+    }
+    if (limits.isEmpty() == false) {
+      interfaces.add(LimitedCases.formatInterfaceName());
+    }
+    if (coalescing.isEmpty() == false) {
+      interfaces.add(CoalescingCases.formatInterfaceName());
+    }
+    w.append(wrapIfNonBlank(String.join(", ", interfaces), " implements ", ""));
+  }
+
+  private void appendInstanceField(Appendable w) throws IOException {
+    w.append(
+        formatStatement(
+            String.format(
+                "static final %s %s = new %s()",
+                ac.getTypeName(),
+                DispatchProcessor.FIELD_INSTANCE,
+                ac.getGeneratedSubclassSimpleName())));
   }
 
   private void appendConstructor(Appendable w, final ExecutableElement constructor)
@@ -53,49 +120,24 @@ final class GeneratedSubclass {
 
   private void appendMethodImpl(Appendable w) throws IOException {
     w.append("@Override\n");
-    final ExecutableElement method = block.getSwitchMethodElement();
-    w.append(
-        wrapIfNonBlank(
-            ac.formatModifiers(method.getModifiers(), s -> s.filter(it -> it != Modifier.ABSTRACT)),
-            "",
-            " "));
-    w.append(
-        wrapIfNonBlank(
-            ac.formatTypeParameterElements(method.getTypeParameters(), TypeParameterName.INSTANCE),
-            "",
-            " "));
+    if (memoized != null) {
+      w.append("@SuppressWarnings(\"unchecked\")\n");
+    }
     w.append(
-        String.format(
-            "%s %s",
-            method.getReturnType().accept(TypeArgumentName.INSTANCE, new AppendableString()),
-            method.getSimpleName()));
-    w.append(ac.formatMethodParameters(method));
-    w.append(wrapIfNonBlank(ac.formatMethodThrows(method), " ", ""));
+        ac.formatMethodDecl(
+            block.getSwitchMethodElement(), s -> s.filter(it -> it != Modifier.ABSTRACT)));
     ac.startBlock(w);
-    w.append(
-        block
-            .getCaseParameters()
-            .stream()
-            .map(
-                it ->
-                    String.format(
-                        "if (%s instanceof %s) {\n%s(%s);\n}",
-                        block.getSwitchParameterName(),
-                        it.getParameterTypeName(),
-                        it.getMethodName(),
-                        method
-                            .getParameters()
-                            .stream()
-                            .map(
-                                it2 ->
-                                    it2.getSimpleName().equals(block.getSwitchParameterName())
-                                        ? String.format(
-                                            "(%s) %s",
-                                            it.getParameterTypeName(), it2.getSimpleName())
-                                        : it2.getSimpleName())
-                            .map(Object::toString)
-                            .collect(Collectors.joining(", "))))
-            .collect(Collectors.joining(" else ", "", "\n")));
+    if (memoized != null) {
+      memoized.appendBody(w);
+      ac.endBlock(w);
+      w.append(
+          ac.formatMethodDecl(
+              block.getSwitchMethodElement(),
+              s -> Stream.of(Modifier.PRIVATE),
+              memoized.getUncachedMethodName()));
+      ac.startBlock(w);
+    }
+    strategy.appendBody(w);
     ac.endBlock(w);
   }
 
@@ -18,7 +18,7 @@ import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.DeclaredType;
 import tilt.apt.dispatch.processor.UnsafeOperations.ExistingSuperclassType;
 
-final class GeneratedSuperclass {
+final class GeneratedSuperclass implements GeneratedSource {
   private static <T> List<T> concat(final List<? extends T> a, final List<? extends T> b) {
     final List<T> c = new ArrayList<>(a.size() + b.size());
     c.addAll(a);
@@ -27,10 +27,12 @@ final class GeneratedSuperclass {
   }
 
   private final AnnotatedClass ac;
+  private final SwitchBlock block;
   private final DeclaredType declaredType;
 
-  public GeneratedSuperclass(final AnnotatedClass ann) {
+  public GeneratedSuperclass(final AnnotatedClass ann, final SwitchBlock block) {
     this.ac = ann;
+    this.block = block;
     this.declaredType = ofNullable(ann.getSuperclass()).map(it -> asDeclaredType(it)).orElse(null);
   }
 
@@ -45,13 +47,20 @@ final class GeneratedSuperclass {
     }
   }
 
-  void append(Appendable w) throws IOException {
+  @Override
+  public void append(Appendable w) throws IOException {
     ensureExists();
     appendClassDecl(w);
     ac.startBlock(w);
     for (final ExecutableElement constructor : ac.getAccessibleConstructors()) {
       appendFactoryMethod(w, constructor);
     }
+    if (block.isSingleton()) {
+      appendInstanceMethod(w, ac.getNoArgConstructor());
+    }
+    if (block.getSwitch().warmUp()) {
+      new WarmUp(ac, block).appendDelegates(w);
+    }
     ac.endBlock(w);
   }
 
@@ -116,6 +125,24 @@ final class GeneratedSuperclass {
                 ac.formatMethodArguments(constructor))));
   }
 
+  private void appendInstanceMethod(Appendable w, final ExecutableElement constructor)
+      throws IOException {
+    w.append(
+        AnnotatedClass.wrapIfNonBlank(
+            ac.formatModifiers(
+                constructor.getModifiers(), it -> Stream.concat(Stream.of(Modifier.STATIC), it)),
+            "",
+            " "));
+    w.append(String.format("%s instance()", ac.getTypeName()));
+    ac.startBlock(w);
+    w.append(
+        AnnotatedClass.formatStatement(
+            String.format(
+                "return %s.%s",
+                ac.getGeneratedSubclassSimpleName(), DispatchProcessor.FIELD_INSTANCE)));
+    ac.endBlock(w);
+  }
+
   private String formatExtends() {
     return ofNullable(this.declaredType.accept(ExistingSuperclassType.INSTANCE, null))
         .map(it -> asDeclaredType(it))
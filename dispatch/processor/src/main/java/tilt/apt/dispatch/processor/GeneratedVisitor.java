@@ -0,0 +1,79 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.AnnotatedClass.wrapIfNonBlank;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * The visitor interface of a {@link tilt.apt.dispatch.annotations.Switch.Strategy#VISITOR} switch,
+ * with one {@code visitX} method per @Case.
+ */
+final class GeneratedVisitor implements GeneratedSource {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+
+  public GeneratedVisitor(final AnnotatedClass ann, final SwitchBlock block) {
+    this.ac = ann;
+    this.block = block;
+  }
+
+  @Override
+  public void append(Appendable w) throws IOException {
+    w.append(ac.isPublic() ? "public interface " : "interface ");
+    w.append(ac.getGeneratedVisitorSimpleName());
+    w.append(
+        ac.formatTypeParameterElements(ac.getTypeParameterElements(), TypeParameterName.INSTANCE));
+    ac.startBlock(w);
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append(formatStatement(formatVisitMethodDecl(ac, block, caseParameter)));
+    }
+    ac.endBlock(w);
+  }
+
+  /** Returns the visitor type, as implemented by the generated subclass. */
+  static String formatVisitorType(final AnnotatedClass ac) {
+    return ac.getGeneratedVisitorSimpleName()
+        + ac.formatTypeParameterElements(ac.getTypeParameterElements(), TypeArgumentName.INSTANCE);
+  }
+
+  /**
+   * Returns the declaration of the visitor method for a case: the switch method with the switch
+   * parameter narrowed to the case type.
+   */
+  static String formatVisitMethodDecl(
+      final AnnotatedClass ac, final SwitchBlock block, final ParameterInMethod caseParameter) {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    return String.format(
+        "%s %s%s%s",
+        method.getReturnType().accept(TypeArgumentName.INSTANCE, new AppendableString()),
+        block.getVisitMethodName(caseParameter),
+        method
+            .getParameters()
+            .stream()
+            .map(
+                it ->
+                    String.format(
+                        "%s %s",
+                        (it.getSimpleName().equals(block.getSwitchParameterName())
+                                ? caseParameter.variableElement
+                                : it)
+                            .asType()
+                            .accept(TypeArgumentName.INSTANCE, new AppendableString()),
+                        it.getSimpleName()))
+            .collect(Collectors.joining(", ", "(", ")")),
+        wrapIfNonBlank(ac.formatMethodThrows(method), " ", ""));
+  }
+
+  /** Returns the statement of the visitor method that forwards to the case method. */
+  static String formatVisitMethodImpl(
+      final AnnotatedClass ac, final SwitchBlock block, final ParameterInMethod caseParameter) {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final String call = caseParameter.getMethodName() + ac.formatMethodArguments(method);
+    return formatStatement(
+        method.getReturnType().getKind() == TypeKind.VOID ? call : "return " + call);
+  }
+}
@@ -0,0 +1,106 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.SafeOperations.getQualifiedName;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.getSuperclass;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Memoizes the walks over the supertypes of case and switch types for the whole compilation, so
+ * that cases sharing library superclasses walk them once. Types are keyed by qualified name.
+ *
+ * <p>A supertype generated by this processor does not exist before the round after it is written. A
+ * walk that meets such a missing type is therefore kept only until the next round, as is any
+ * negative answer that the missing type could change.
+ *
+ * <p>With a {@link HierarchyStore}, the walks over binary types are kept across compiles as well.
+ */
+final class HierarchyCache {
+  private final Map<String, Integer> depths = new HashMap<>();
+  private final Set<String> incompleteDepths = new HashSet<>();
+  private final Map<String, Boolean> supertypeNames = new HashMap<>();
+  private final Set<String> incompleteSupertypeNames = new HashSet<>();
+  private int hits;
+  private int misses;
+  private final HierarchyStore store;
+
+  HierarchyCache(final HierarchyStore store) {
+    this.store = store;
+  }
+
+  /** Drops the entries that a type generated in the previous round could change. */
+  void startRound() {
+    depths.keySet().removeAll(incompleteDepths);
+    incompleteDepths.clear();
+    supertypeNames.keySet().removeAll(incompleteSupertypeNames);
+    incompleteSupertypeNames.clear();
+  }
+
+  /** Returns the number of superclasses of a class, or 0 for an interface. */
+  int getDepth(final TypeElement typeElement) {
+    final String key = getQualifiedName(typeElement);
+    final Integer cached = depths.get(key);
+    if (cached != null) {
+      hits++;
+      return cached;
+    }
+    final HierarchyStore.Entry entry = store == null ? null : store.get(typeElement);
+    if (entry != null) {
+      depths.put(key, entry.depth);
+      return entry.depth;
+    }
+    misses++;
+    int depth = 0;
+    final TypeMirror superclass = getSuperclass(typeElement);
+    if (superclass != null) {
+      final TypeElement superElement = asTypeElement(superclass);
+      depth = 1 + getDepth(superElement);
+      if (superclass.getKind() == TypeKind.ERROR
+          || incompleteDepths.contains(getQualifiedName(superElement))) {
+        incompleteDepths.add(key);
+      }
+    }
+    depths.put(key, depth);
+    return depth;
+  }
+
+  /** Returns true if the type element extends or implements a type of the simple name. */
+  boolean hasSupertypeNamed(final TypeElement typeElement, final String simpleName) {
+    final String key = getQualifiedName(typeElement) + " " + simpleName;
+    final Boolean cached = supertypeNames.get(key);
+    if (cached != null) {
+      hits++;
+      return cached;
+    }
+    final HierarchyStore.Entry entry = store == null ? null : store.get(typeElement);
+    if (entry != null) {
+      final boolean result = entry.supertypeNames.contains(simpleName);
+      supertypeNames.put(key, result);
+      return result;
+    }
+    misses++;
+    final boolean result = UnsafeOperations.hasSupertypeNamed(typeElement, simpleName);
+    supertypeNames.put(key, result);
+    if (result == false) {
+      incompleteSupertypeNames.add(key);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d types, %d hits, %d misses%s",
+        depths.size() + supertypeNames.size(),
+        hits,
+        misses,
+        store == null ? "" : ", store: " + store);
+  }
+}
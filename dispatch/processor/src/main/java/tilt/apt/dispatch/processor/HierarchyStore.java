@@ -0,0 +1,298 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.SafeOperations.asElement;
+import static tilt.apt.dispatch.processor.SafeOperations.getQualifiedName;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asDeclaredType;
+
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.annotation.processing.Filer;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps the supertypes of binary types, those read from class files rather than compiled, in a file
+ * of the dispatch.cacheDir directory, so that later compiles do not walk the same library
+ * hierarchies again.
+ *
+ * <p>Each entry lists the class files it was worked out from, the type and all its supertypes, with
+ * a hash of their content. An entry is used only while every one of them is unchanged, and is
+ * dropped from the file otherwise. Classes of the java packages are keyed by the version of the JDK
+ * and the source version instead, since the platform classes are not on the class path. A type with
+ * a supertype compiled from source is never stored.
+ */
+final class HierarchyStore {
+  static final String FILE_NAME = "tilt-dispatch-hierarchy";
+  static final String HEADER = "# tilt-dispatch hierarchy cache 1";
+
+  private final Path file;
+  private final Filer filer;
+  private final Elements elements;
+  private final Trees trees;
+  private final String platformHash;
+  private final Map<String, Entry> entries = new TreeMap<>();
+  private final Set<String> validated = new HashSet<>();
+  private final Map<String, Optional<String>> hashes = new HashMap<>();
+  private boolean changed;
+  private int reused;
+  private int stored;
+
+  /** The supertypes of a binary type and the class files they were worked out from. */
+  static final class Entry {
+    final int depth;
+    final Set<String> supertypeNames;
+    final Map<String, String> inputs;
+
+    Entry(final int depth, final Set<String> supertypeNames, final Map<String, String> inputs) {
+      this.depth = depth;
+      this.supertypeNames = supertypeNames;
+      this.inputs = inputs;
+    }
+  }
+
+  HierarchyStore(
+      final Path directory,
+      final Filer filer,
+      final Elements elements,
+      final Trees trees,
+      final SourceVersion sourceVersion) {
+    this.file = directory.resolve(FILE_NAME);
+    this.filer = filer;
+    this.elements = elements;
+    this.trees = trees;
+    this.platformHash = "jdk-" + System.getProperty("java.version") + "-" + sourceVersion;
+  }
+
+  /** Reads the entries of the previous compiles, ignoring a file of another format. */
+  void load() throws IOException {
+    if (Files.exists(file) == false) {
+      return;
+    }
+    final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    if (lines.isEmpty() || lines.get(0).equals(HEADER) == false) {
+      changed = true;
+      return;
+    }
+    for (final String line : lines.subList(1, lines.size())) {
+      final String[] columns = line.split("\t", -1);
+      if (columns.length != 4) {
+        changed = true;
+        continue;
+      }
+      final Map<String, String> inputs = new TreeMap<>();
+      for (final String input : split(columns[3])) {
+        final int separator = input.lastIndexOf('=');
+        if (separator > 0) {
+          inputs.put(input.substring(0, separator), input.substring(separator + 1));
+        }
+      }
+      try {
+        entries.put(
+            columns[0],
+            new Entry(Integer.parseInt(columns[1]), new TreeSet<>(split(columns[2])), inputs));
+      } catch (NumberFormatException e) {
+        changed = true;
+      }
+    }
+  }
+
+  /** Writes the entries if any was added or dropped, replacing the file at once. */
+  void save() throws IOException {
+    if (changed == false) {
+      return;
+    }
+    Files.createDirectories(file.getParent());
+    final List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    entries.forEach(
+        (name, entry) ->
+            lines.add(
+                String.join(
+                    "\t",
+                    name,
+                    String.valueOf(entry.depth),
+                    String.join(" ", entry.supertypeNames),
+                    entry
+                        .inputs
+                        .entrySet()
+                        .stream()
+                        .map(it -> it.getKey() + "=" + it.getValue())
+                        .collect(Collectors.joining(" ")))));
+    final Path temporary = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+    try {
+      Files.write(temporary, lines, StandardCharsets.UTF_8);
+      try {
+        Files.move(
+            temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Returns the entry of a binary type whose class files are unchanged, working it out if needed,
+   * or null if the type or one of its supertypes is compiled from source or cannot be hashed.
+   */
+  Entry get(final TypeElement typeElement) {
+    final String name = getQualifiedName(typeElement);
+    if (validated.contains(name)) {
+      return entries.get(name);
+    }
+    if (isBinary(typeElement) == false) {
+      return null;
+    }
+    final Entry cached = entries.get(name);
+    if (cached != null) {
+      if (isUnchanged(cached)) {
+        validated.add(name);
+        reused++;
+        return cached;
+      }
+      entries.remove(name);
+      changed = true;
+    }
+    final Entry entry = create(typeElement);
+    if (entry != null) {
+      entries.put(name, entry);
+      validated.add(name);
+      changed = true;
+      stored++;
+    }
+    return entry;
+  }
+
+  private boolean isUnchanged(final Entry entry) {
+    for (final Map.Entry<String, String> input : entry.inputs.entrySet()) {
+      final TypeElement typeElement = elements.getTypeElement(input.getKey());
+      if (typeElement == null
+          || isBinary(typeElement) == false
+          || getHash(typeElement).filter(input.getValue()::equals).isPresent() == false) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Entry create(final TypeElement typeElement) {
+    final Set<TypeElement> supertypes = new LinkedHashSet<>();
+    if (addSupertypes(typeElement, supertypes) == false) {
+      return null;
+    }
+    final Map<String, String> inputs = new TreeMap<>();
+    final Set<String> supertypeNames = new TreeSet<>();
+    for (final TypeElement input : supertypes) {
+      final Optional<String> hash = getHash(input);
+      if (hash.isPresent() == false) {
+        return null;
+      }
+      inputs.put(getQualifiedName(input), hash.get());
+      if (input != typeElement) {
+        supertypeNames.add(input.getSimpleName().toString());
+      }
+    }
+    int depth = 0;
+    for (TypeMirror superclass = typeElement.getSuperclass();
+        superclass.getKind() == TypeKind.DECLARED;
+        superclass = asElement((DeclaredType) superclass).getSuperclass()) {
+      depth++;
+    }
+    return new Entry(depth, supertypeNames, inputs);
+  }
+
+  /** Adds the type and its supertypes, returning false if one of them is not binary. */
+  private boolean addSupertypes(final TypeElement typeElement, final Set<TypeElement> supertypes) {
+    if (supertypes.add(typeElement) == false) {
+      return true;
+    }
+    if (isBinary(typeElement) == false) {
+      return false;
+    }
+    final List<TypeMirror> direct = new ArrayList<>(typeElement.getInterfaces());
+    direct.add(typeElement.getSuperclass());
+    for (final TypeMirror supertype : direct) {
+      if (supertype.getKind() == TypeKind.ERROR) {
+        return false;
+      }
+      final DeclaredType declaredType = asDeclaredType(supertype);
+      if (declaredType != null && addSupertypes(asElement(declaredType), supertypes) == false) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isBinary(final TypeElement typeElement) {
+    return trees.getPath(typeElement) == null;
+  }
+
+  /** Returns the hash of the class file of a binary type, if it can be read. */
+  private Optional<String> getHash(final TypeElement typeElement) {
+    return hashes.computeIfAbsent(getQualifiedName(typeElement), it -> readHash(typeElement));
+  }
+
+  private Optional<String> readHash(final TypeElement typeElement) {
+    final String packageName = elements.getPackageOf(typeElement).getQualifiedName().toString();
+    if (packageName.equals("java") || packageName.startsWith("java.")) {
+      return Optional.of(platformHash);
+    }
+    final String binaryName = elements.getBinaryName(typeElement).toString();
+    final String relativeName =
+        (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+            + ".class";
+    try {
+      final FileObject fileObject =
+          filer.getResource(StandardLocation.CLASS_PATH, packageName, relativeName);
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      try (final InputStream in = fileObject.openInputStream()) {
+        final byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+          digest.update(buffer, 0, n);
+        }
+      }
+      final StringBuilder hash = new StringBuilder();
+      for (final byte b : digest.digest()) {
+        hash.append(String.format("%02x", b));
+      }
+      return Optional.of(hash.toString());
+    } catch (IOException | IllegalArgumentException | NoSuchAlgorithmException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static List<String> split(final String column) {
+    return column.isEmpty() ? List.of() : List.of(column.split(" "));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d entries, %d reused, %d stored", entries.size(), reused, stored);
+  }
+}
@@ -0,0 +1,90 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Keeps the hot cases of a switch in a switch method small enough to be inlined into its callers.
+ * The method compares the exact class of the argument with the classes of the hot cases, and passes
+ * any other argument to a cold method with the dispatch of the wrapped strategy, so that the many
+ * cold cases do not count against {@link MethodSize#FREQ_INLINE_SIZE}.
+ */
+final class HotColdDispatch implements DispatchStrategy {
+  static final String LOCAL_HOT_TYPE = "hotType";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+  private final List<ParameterInMethod> cases;
+  private final DispatchStrategy cold;
+
+  public HotColdDispatch(
+      final AnnotatedClass ac, final SwitchBlock block, final DispatchStrategy cold) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+    this.cases = new ArrayList<>(block.getCaseParameters());
+    this.cold = cold;
+  }
+
+  @Override
+  public void appendMembers(Appendable w) throws IOException {
+    cold.appendMembers(w);
+    w.append(
+        ac.formatMethodDecl(
+            block.getSwitchMethodElement(),
+            s ->
+                block.isStatic()
+                    ? Stream.of(Modifier.PRIVATE, Modifier.STATIC)
+                    : Stream.of(Modifier.PRIVATE),
+            formatColdMethodName()));
+    ac.startBlock(w);
+    cold.appendBody(w);
+    ac.endBlock(w);
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    final CharSequence argument = block.getSwitchParameterName();
+    w.append(
+        formatStatement(
+            String.format(
+                "final Class<?> %s = %s == null ? null : %s.getClass()",
+                LOCAL_HOT_TYPE, argument, argument)));
+    for (final ExactClassDispatch.ExactClass hotClass : block.getHotClasses()) {
+      w.append(String.format("if (%s == %s.class) {\n", LOCAL_HOT_TYPE, hotClass.name));
+      w.append(statements.formatCaseStatement(cases.get(hotClass.caseIndex)));
+      if (statements.isReturning() == false) {
+        w.append(formatStatement("return"));
+      }
+      w.append("}\n");
+    }
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final String call =
+        String.format(
+            "%s(%s)",
+            formatColdMethodName(),
+            method
+                .getParameters()
+                .stream()
+                .map(it -> it.getSimpleName().toString())
+                .collect(Collectors.joining(", ")));
+    w.append(formatStatement(statements.isVoid() ? call : "return " + call));
+  }
+
+  @Override
+  public boolean hasStaticState() {
+    return cold.hasStaticState();
+  }
+
+  private String formatColdMethodName() {
+    return block.getSwitchMethodElement().getSimpleName() + "$cold";
+  }
+}
@@ -0,0 +1,32 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+
+/** Tests the argument against each case type in turn. */
+final class InstanceofDispatch implements DispatchStrategy {
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public InstanceofDispatch(final SwitchBlock block) {
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    w.append(
+        block
+            .getCaseParameters()
+            .stream()
+            .map(
+                it ->
+                    String.format(
+                        "if (%s instanceof %s) {\n%s}",
+                        block.getSwitchParameterName(),
+                        it.getParameterTypeName(),
+                        statements.formatCaseStatement(it)))
+            .collect(Collectors.joining(" else ", "", "\n")));
+    w.append(statements.formatNoCase());
+  }
+}
@@ -0,0 +1,143 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.SafeOperations.isPrivateElement;
+import static tilt.apt.dispatch.processor.SafeOperations.isStaticElement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * The hooks of the {@link Switch#interceptors()} that apply to each @Case. A hook is a static
+ * method of an interceptor, found at compile time for the type of each case, so the generated
+ * switch calls it directly and javac picks the most specific overload:
+ *
+ * <ul>
+ *   <li>{@code before(A argument)}
+ *   <li>{@code after(A argument, R result)}, or {@code after(A argument)} for a void switch
+ *   <li>{@code onError(A argument, Throwable error)}
+ * </ul>
+ */
+final class Interceptors {
+  static final String HOOK_BEFORE = "before";
+  static final String HOOK_AFTER = "after";
+  static final String HOOK_ON_ERROR = "onError";
+
+  private final Map<ParameterInMethod, Hooks> hooks = new HashMap<>();
+
+  private Interceptors() {}
+
+  /** Returns true if an interceptor type has a static hook of any name. */
+  static boolean hasHooks(final TypeElement interceptor) {
+    return ElementFilter.methodsIn(interceptor.getEnclosedElements())
+        .stream()
+        .filter(Interceptors::isHookMethod)
+        .anyMatch(
+            it ->
+                it.getSimpleName().contentEquals(HOOK_BEFORE)
+                    || it.getSimpleName().contentEquals(HOOK_AFTER)
+                    || it.getSimpleName().contentEquals(HOOK_ON_ERROR));
+  }
+
+  /** Finds the hooks of the interceptors, in their order, that apply to each case. */
+  static Interceptors resolve(
+      final Elements elements,
+      final Types types,
+      final SwitchBlock block,
+      final List<TypeElement> interceptors) {
+    final Interceptors result = new Interceptors();
+    final TypeMirror returnType = block.getSwitchMethodElement().getReturnType();
+    final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+    final TypeMirror throwable = elements.getTypeElement(Throwable.class.getName()).asType();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final TypeMirror caseType = block.getCaseType(caseParameter);
+      final Hooks caseHooks = new Hooks();
+      for (final TypeElement interceptor : interceptors) {
+        final String name = interceptor.getQualifiedName().toString();
+        final List<ExecutableElement> methods =
+            ElementFilter.methodsIn(interceptor.getEnclosedElements());
+        if (hasHook(types, methods, HOOK_BEFORE, caseType)) {
+          caseHooks.before.add(name);
+        }
+        if (isVoid
+            ? hasHook(types, methods, HOOK_AFTER, caseType)
+            : hasHook(types, methods, HOOK_AFTER, caseType, returnType)) {
+          caseHooks.after.add(0, name);
+        }
+        if (hasHook(types, methods, HOOK_ON_ERROR, caseType, throwable)) {
+          caseHooks.onError.add(0, name);
+        }
+      }
+      if (caseHooks.isEmpty() == false) {
+        result.hooks.put(caseParameter, caseHooks);
+      }
+    }
+    return result;
+  }
+
+  /** Returns true if the case is intercepted, so that it must be called by the switch method. */
+  static boolean isIntercepted(final SwitchBlock block, final ParameterInMethod caseParameter) {
+    return block.getInterceptors() != null
+        && block.getInterceptors().hooks.containsKey(caseParameter);
+  }
+
+  /** Returns the hooks of the case, which may be empty. */
+  Hooks get(final ParameterInMethod caseParameter) {
+    return hooks.getOrDefault(caseParameter, Hooks.NONE);
+  }
+
+  private static boolean hasHook(
+      final Types types,
+      final List<ExecutableElement> methods,
+      final String name,
+      final TypeMirror... argumentTypes) {
+    return methods
+        .stream()
+        .filter(Interceptors::isHookMethod)
+        .filter(it -> it.getSimpleName().contentEquals(name))
+        .filter(it -> it.getParameters().size() == argumentTypes.length)
+        .anyMatch(
+            it -> {
+              for (int i = 0; i < argumentTypes.length; i++) {
+                if (types.isAssignable(argumentTypes[i], it.getParameters().get(i).asType())
+                    == false) {
+                  return false;
+                }
+              }
+              return true;
+            });
+  }
+
+  private static boolean isHookMethod(final ExecutableElement method) {
+    return isStaticElement(method)
+        && isPrivateElement(method) == false
+        && method.getTypeParameters().isEmpty()
+        && method.getThrownTypes().isEmpty();
+  }
+
+  /** The interceptors with a hook for a case; after and onError in reverse order. */
+  static final class Hooks {
+    static final Hooks NONE = new Hooks();
+
+    final List<String> before = new ArrayList<>();
+    final List<String> after = new ArrayList<>();
+    final List<String> onError = new ArrayList<>();
+
+    boolean isEmpty() {
+      return before.isEmpty() && after.isEmpty() && onError.isEmpty();
+    }
+
+    int size() {
+      return before.size() + after.size() + onError.size();
+    }
+  }
+}
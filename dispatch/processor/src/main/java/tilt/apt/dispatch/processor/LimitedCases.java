@@ -0,0 +1,87 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import tilt.apt.dispatch.annotations.Case;
+import tilt.apt.dispatch.runtime.CaseLimit;
+import tilt.apt.dispatch.runtime.CaseLimited;
+
+/**
+ * The {@link CaseLimit} of every @Case with a {@link Case#limit()}, in a static array of the
+ * generated subclass or dispatcher, so that every instance of the switch class shares the permits.
+ * The switch method takes a permit before it calls the case and returns it in a finally block, and
+ * a call without a permit is handled by the {@link Case#overflow()} of the case.
+ */
+final class LimitedCases {
+  static final String FIELD_LIMITS = "LIMITS";
+  static final String METHOD_CASE_LIMITS = "caseLimits";
+
+  private final SwitchBlock block;
+  private final List<ParameterInMethod> limited = new ArrayList<>();
+
+  public LimitedCases(final SwitchBlock block) {
+    this.block = block;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      if (getLimit(caseParameter) > 0) {
+        limited.add(caseParameter);
+      }
+    }
+  }
+
+  static int getLimit(final ParameterInMethod caseParameter) {
+    return caseParameter.variableElement.getAnnotation(Case.class).limit();
+  }
+
+  static String formatInterfaceName() {
+    return CaseLimited.class.getName();
+  }
+
+  boolean isEmpty() {
+    return limited.isEmpty();
+  }
+
+  /** Returns the limit of the case in the array of limits, or null if it has none. */
+  String formatLimit(final ParameterInMethod caseParameter) {
+    final int index = limited.indexOf(caseParameter);
+    return index < 0 ? null : String.format("%s[%d]", FIELD_LIMITS, index);
+  }
+
+  /** Returns the name of the case in the {@link CaseLimit}, its method and parameter type. */
+  static String formatCaseName(final ParameterInMethod caseParameter) {
+    return String.format(
+        "%s(%s)", caseParameter.getMethodName(), caseParameter.getParameterSimpleName());
+  }
+
+  /** Appends the array of limits and the method that lists them. */
+  void appendMembers(Appendable w) throws IOException {
+    final List<String> limits = new ArrayList<>();
+    for (final ParameterInMethod caseParameter : limited) {
+      limits.add(
+          String.format(
+              "new %s(\"%s\", %d)",
+              CaseLimit.class.getName(), formatCaseName(caseParameter), getLimit(caseParameter)));
+    }
+    w.append(
+        formatStatement(
+            String.format(
+                "private static final %s[] %s = {%s}",
+                CaseLimit.class.getName(), FIELD_LIMITS, String.join(", ", limits))));
+    if (block.isStatic() == false) {
+      w.append("@Override\npublic ");
+    } else {
+      w.append("static ");
+    }
+    w.append(
+        String.format("java.util.List<%s> %s()", CaseLimit.class.getName(), METHOD_CASE_LIMITS));
+    w.append(" {\n");
+    w.append(
+        formatStatement(
+            String.format(
+                "return java.util.Collections.unmodifiableList(java.util.Arrays.asList(%s))",
+                FIELD_LIMITS)));
+    w.append("}\n");
+  }
+}
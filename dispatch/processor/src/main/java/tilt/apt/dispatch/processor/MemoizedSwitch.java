@@ -0,0 +1,128 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import javax.lang.model.element.ExecutableElement;
+import tilt.apt.dispatch.annotations.Memoize;
+import tilt.apt.dispatch.runtime.Memoized;
+
+/**
+ * Wraps the switch method of a {@link Memoize} switch with a bounded {@link
+ * java.util.concurrent.ConcurrentHashMap}. A hit does a single lookup and bumps a {@link
+ * java.util.concurrent.atomic.LongAdder}, neither of which allocates.
+ */
+final class MemoizedSwitch {
+  static final String FIELD_CACHE = "memoCache";
+  static final String FIELD_HITS = "memoHits";
+  static final String FIELD_MISSES = "memoMisses";
+  static final String FIELD_NULL = "MEMO_NULL";
+
+  private final SwitchBlock block;
+  private final Memoize memoize;
+
+  public MemoizedSwitch(final SwitchBlock block) {
+    this.block = block;
+    this.memoize = block.getMemoize();
+  }
+
+  static String formatInterfaceName() {
+    return Memoized.class.getName();
+  }
+
+  /** Returns the name of the private method that holds the dispatch without the cache. */
+  String getUncachedMethodName() {
+    return block.getSwitchMethodElement().getSimpleName() + "$uncached";
+  }
+
+  void appendBody(Appendable w) throws IOException {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final String argument = block.getSwitchParameterName().toString();
+    final String returnType =
+        method.getReturnType().accept(TypeArgumentName.INSTANCE, new AppendableString()).toString();
+    final String uncachedCall =
+        String.format("%s(%s)", getUncachedMethodName(), block.getSwitchParameterName());
+    w.append(String.format("if (%s == null)", argument));
+    w.append(" {\n");
+    w.append(formatStatement("return " + uncachedCall));
+    w.append("}\n");
+    w.append(
+        formatStatement(
+            String.format(
+                "final Object key = %s",
+                memoize.key() == Memoize.Key.CLASS ? argument + ".getClass()" : argument)));
+    w.append(formatStatement(String.format("final Object cached = %s.get(key)", FIELD_CACHE)));
+    w.append("if (cached != null) {\n");
+    w.append(formatStatement(FIELD_HITS + ".increment()"));
+    if (method.getReturnType().getKind().isPrimitive()) {
+      w.append(formatStatement(String.format("return (%s) cached", returnType)));
+    } else {
+      w.append(
+          formatStatement(
+              String.format("return cached == %s ? null : (%s) cached", FIELD_NULL, returnType)));
+    }
+    w.append("}\n");
+    w.append(formatStatement(FIELD_MISSES + ".increment()"));
+    w.append(formatStatement(String.format("final %s result = %s", returnType, uncachedCall)));
+    w.append(String.format("if (%s.size() >= %d)", FIELD_CACHE, memoize.maximumSize()));
+    w.append(" {\n");
+    switch (memoize.eviction()) {
+      case CLEAR:
+        w.append(formatStatement(FIELD_CACHE + ".clear()"));
+        break;
+      case ANY:
+        w.append(
+            formatStatement(
+                String.format(
+                    "final java.util.Iterator<Object> it = %s.keySet().iterator()", FIELD_CACHE)));
+        w.append("if (it.hasNext()) {\n");
+        w.append(formatStatement(FIELD_CACHE + ".remove(it.next())"));
+        w.append("}\n");
+        break;
+      case NONE:
+        w.append(formatStatement("return result"));
+        break;
+    }
+    w.append("}\n");
+    if (method.getReturnType().getKind().isPrimitive()) {
+      w.append(formatStatement(FIELD_CACHE + ".put(key, result)"));
+    } else {
+      w.append(
+          formatStatement(
+              String.format("%s.put(key, result == null ? %s : result)", FIELD_CACHE, FIELD_NULL)));
+    }
+    w.append(formatStatement("return result"));
+  }
+
+  void appendMembers(Appendable w) throws IOException {
+    w.append(
+        formatStatement(
+            String.format("private static final Object %s = new Object()", FIELD_NULL)));
+    w.append(
+        formatStatement(
+            String.format(
+                "private final java.util.concurrent.ConcurrentHashMap<Object, Object> %s ="
+                    + " new java.util.concurrent.ConcurrentHashMap<>()",
+                FIELD_CACHE)));
+    for (final String field : new String[] {FIELD_HITS, FIELD_MISSES}) {
+      w.append(
+          formatStatement(
+              String.format(
+                  "private final java.util.concurrent.atomic.LongAdder %s ="
+                      + " new java.util.concurrent.atomic.LongAdder()",
+                  field)));
+    }
+    appendAccessor(w, "long hitCount()", "return " + FIELD_HITS + ".sum()");
+    appendAccessor(w, "long missCount()", "return " + FIELD_MISSES + ".sum()");
+    appendAccessor(w, "int cacheSize()", "return " + FIELD_CACHE + ".size()");
+    appendAccessor(w, "void clearCache()", FIELD_CACHE + ".clear()");
+  }
+
+  private static void appendAccessor(Appendable w, final String decl, final String statement)
+      throws IOException {
+    w.append("@Override\npublic " + decl);
+    w.append(" {\n");
+    w.append(formatStatement(statement));
+    w.append("}\n");
+  }
+}
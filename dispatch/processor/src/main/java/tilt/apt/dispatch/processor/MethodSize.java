@@ -0,0 +1,161 @@
+package tilt.apt.dispatch.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Estimates the bytecode size of the generated switch method. HotSpot never compiles a method over
+ * {@link #HUGE_METHOD_LIMIT} bytes and does not inline a method over {@link #FREQ_INLINE_SIZE}
+ * bytes into a hot caller.
+ *
+ * <p>The estimate counts the instructions javac emits for each case and rounds up, so that a method
+ * just under a limit is treated as over it.
+ */
+final class MethodSize {
+  static final int FREQ_INLINE_SIZE = 325;
+  static final int HUGE_METHOD_LIMIT = 8000;
+
+  /** aload, instanceof and ifeq. */
+  static final int SIZE_INSTANCEOF = 7;
+  /** One entry of a tableswitch. */
+  static final int SIZE_SWITCH_ENTRY = 4;
+  /** The tableswitch itself with its padding and default. */
+  static final int SIZE_SWITCH = 16;
+  /** The null check, ClassValue.get, getClass and unboxing of the index. */
+  static final int SIZE_CLASS_VALUE_INDEX = 24;
+  /** The null check and the interface call of dispatchId. */
+  static final int SIZE_DISPATCH_ID_INDEX = 12;
+  /** The exception thrown when no case matches. */
+  static final int SIZE_NO_CASE = 16;
+  /** The null check, the lookup of an extension and its null check, less its call. */
+  static final int SIZE_EXTENSION = 24;
+  /** The permit of a case with a limit, the finally block that returns it and the overflow. */
+  static final int SIZE_CASE_LIMIT = 48;
+  /** The call of the key method and of the coalescer of a coalescing case, less the case call. */
+  static final int SIZE_COALESCE = 16;
+
+  /** The call of an interceptor hook with the argument, less its cast. */
+  static final int SIZE_HOOK = 8;
+
+  /** The try and catch around an intercepted case that has onError hooks. */
+  static final int SIZE_HOOK_CATCH = 8;
+
+  /** The getClass of the argument for the hot path, with its null check. */
+  static final int SIZE_HOT_TYPE = 12;
+
+  /** aload, ldc of a class and if_acmpne. */
+  static final int SIZE_HOT_TEST = 6;
+
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+
+  public MethodSize(final SwitchBlock block) {
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+  }
+
+  /** Returns the estimated size of the switch method in bytes. */
+  int estimate() {
+    final int count = block.getCaseParameters().size();
+    int wrapped = 0;
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      if (LimitedCases.getLimit(caseParameter) > 0) {
+        wrapped += SIZE_CASE_LIMIT;
+      }
+      if (CoalescingCases.isCoalescing(caseParameter)) {
+        wrapped += SIZE_COALESCE;
+      }
+      if (block.getInterceptors() != null) {
+        final Interceptors.Hooks hooks = block.getInterceptors().get(caseParameter);
+        wrapped += hooks.size() * SIZE_HOOK + (hooks.onError.isEmpty() ? 0 : SIZE_HOOK_CATCH);
+      }
+    }
+    final int noCase =
+        (method.getReturnType().getKind() == TypeKind.VOID ? 1 : SIZE_NO_CASE)
+            + (block.getSwitch().extensible() ? SIZE_EXTENSION + estimateCall(0) : 0);
+    switch (block.getStrategy()) {
+      case CLASS_VALUE:
+      case EXACT_CLASS:
+        return wrapped
+            + SIZE_CLASS_VALUE_INDEX
+            + SIZE_SWITCH
+            + count * (SIZE_SWITCH_ENTRY + estimateCall(0))
+            + noCase;
+      case DISPATCH_ID:
+        return wrapped
+            + SIZE_DISPATCH_ID_INDEX
+            + SIZE_SWITCH
+            + count * (SIZE_SWITCH_ENTRY + estimateCall(0))
+            + noCase;
+      case VALUE:
+        return wrapped + SIZE_SWITCH + count * (SIZE_SWITCH_ENTRY + estimateCall(0)) + noCase;
+      case VISITOR:
+        return estimateCall(0) + noCase;
+      default:
+        return wrapped + count * (SIZE_INSTANCEOF + estimateCall(0)) + noCase;
+    }
+  }
+
+  /**
+   * Returns the estimated size of a switch method that tests the hot classes and calls the cold
+   * method for any other argument.
+   */
+  int estimateHotPath(final List<ExactClassDispatch.ExactClass> hotClasses) {
+    final List<ParameterInMethod> cases = new ArrayList<>(block.getCaseParameters());
+    int size = SIZE_HOT_TYPE + estimateCall(1) + 1;
+    for (final ExactClassDispatch.ExactClass hotClass : hotClasses) {
+      size += SIZE_HOT_TEST + estimateCall(1);
+      final ParameterInMethod caseParameter = cases.get(hotClass.caseIndex);
+      if (LimitedCases.getLimit(caseParameter) > 0) {
+        size += SIZE_CASE_LIMIT;
+      }
+      if (CoalescingCases.isCoalescing(caseParameter)) {
+        size += SIZE_COALESCE;
+      }
+      if (block.getInterceptors() != null) {
+        final Interceptors.Hooks hooks = block.getInterceptors().get(caseParameter);
+        size += hooks.size() * SIZE_HOOK + (hooks.onError.isEmpty() ? 0 : SIZE_HOOK_CATCH);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns how many cases a helper method that switches on the index of the case can hold without
+   * growing over {@link #FREQ_INLINE_SIZE}.
+   */
+  int getCasesPerSwitch() {
+    return Math.max(
+        2, (FREQ_INLINE_SIZE - SIZE_SWITCH - SIZE_NO_CASE) / (SIZE_SWITCH_ENTRY + estimateCall(1)));
+  }
+
+  /**
+   * Returns how many instanceof tests a helper method that resolves the index of the case can hold
+   * without growing over {@link #FREQ_INLINE_SIZE}.
+   */
+  static int getTestsPerMethod() {
+    // aload, instanceof, ifeq, iconst or bipush/sipush and ireturn
+    return (FREQ_INLINE_SIZE - 2) / (SIZE_INSTANCEOF + 4);
+  }
+
+  /**
+   * Returns the size of the call of a case, which loads every argument, casts the switch argument
+   * and returns or jumps to the end.
+   *
+   * @param extraSlots the number of local slots taken before the parameters of the switch method
+   */
+  private int estimateCall(final int extraSlots) {
+    int slot = (block.isStatic() ? 0 : 1) + extraSlots;
+    int size = block.isStatic() ? 0 : 1;
+    for (final VariableElement parameter : method.getParameters()) {
+      size += slot <= 3 ? 1 : 2;
+      final TypeKind kind = parameter.asType().getKind();
+      slot += kind == TypeKind.LONG || kind == TypeKind.DOUBLE ? 2 : 1;
+    }
+    // checkcast, invoke and a return or goto
+    return size + 3 + 3 + 3;
+  }
+}
@@ -1,14 +1,21 @@
 package tilt.apt.dispatch.processor;
 
 import static tilt.apt.dispatch.processor.SafeOperations.isAbstractElement;
+import static tilt.apt.dispatch.processor.SafeOperations.isStaticElement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asDeclaredType;
 import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
 
 import java.util.Optional;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
 import javax.lang.model.util.Elements;
+import javax.lang.model.util.SimpleTypeVisitor9;
 
 final class ParameterInMethod {
   final MethodInType methodInType;
@@ -27,7 +34,8 @@ final class ParameterInMethod {
 
   private boolean isGoodSwitch(final MethodInType methodInType) {
     return isAbstractElement(methodInType.typeElement)
-        && isAbstractElement(methodInType.methodElement);
+            && isAbstractElement(methodInType.methodElement)
+        || isStaticElement(methodInType.methodElement);
   }
 
   boolean isGoodSwitch() {
@@ -35,7 +43,64 @@ final class ParameterInMethod {
   }
 
   boolean isGoodCase(final MethodInType methodInType) {
-    return isAbstractElement(methodInType.typeElement);
+    return isAbstractElement(methodInType.typeElement)
+        || isStaticElement(methodInType.methodElement);
+  }
+
+  boolean isStatic() {
+    return isStaticElement(methodInType.methodElement);
+  }
+
+  /** Returns true if the parameter is switched on by value, as an enum, a String or an int. */
+  boolean isValueParameter() {
+    final TypeMirror type = variableElement.asType();
+    switch (type.getKind()) {
+      case INT:
+      case SHORT:
+      case CHAR:
+      case BYTE:
+        return true;
+      case DECLARED:
+        final TypeElement typeElement = asTypeElement(type);
+        return typeElement.getKind() == ElementKind.ENUM
+            || typeElement.getQualifiedName().contentEquals(String.class.getName());
+      default:
+        return false;
+    }
+  }
+
+  /** Returns true if the parameter is a {@link Class} token. */
+  boolean isClassTokenParameter() {
+    return Optional.ofNullable(asTypeElement(variableElement.asType()))
+        .map(it -> it.getQualifiedName().contentEquals(Class.class.getName()))
+        .orElse(false);
+  }
+
+  /**
+   * Returns the class or interface that a {@link Class} parameter stands for, which is its type
+   * argument or the upper bound of its wildcard, or null if that is not a class or interface.
+   */
+  DeclaredType getTokenType() {
+    final DeclaredType classType = asDeclaredType(variableElement.asType());
+    if (classType == null || classType.getTypeArguments().size() != 1) {
+      return null;
+    }
+    return classType
+        .getTypeArguments()
+        .get(0)
+        .accept(
+            new SimpleTypeVisitor9<DeclaredType, Void>() {
+              @Override
+              public DeclaredType visitDeclared(DeclaredType t, Void p) {
+                return t;
+              }
+
+              @Override
+              public DeclaredType visitWildcard(WildcardType t, Void p) {
+                return t.getExtendsBound() == null ? null : t.getExtendsBound().accept(this, p);
+              }
+            },
+            null);
   }
 
   boolean isGoodCase() {
@@ -70,6 +135,13 @@ final class ParameterInMethod {
         .orElse(null);
   }
 
+  String getParameterSimpleName() {
+    return Optional.ofNullable(asTypeElement(variableElement.asType()))
+        .map(TypeElement::getSimpleName)
+        .map(Object::toString)
+        .orElseGet(() -> variableElement.asType().toString());
+  }
+
   @Override
   public String toString() {
     return String.format("%s(%s)", methodInType, variableElement);
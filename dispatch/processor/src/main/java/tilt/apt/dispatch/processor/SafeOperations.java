@@ -32,4 +32,12 @@ final class SafeOperations {
   static boolean isAbstractElement(Element element) {
     return element.getModifiers().contains(Modifier.ABSTRACT);
   }
+
+  static boolean isStaticElement(Element element) {
+    return element.getModifiers().contains(Modifier.STATIC);
+  }
+
+  static boolean isPrivateElement(Element element) {
+    return element.getModifiers().contains(Modifier.PRIVATE);
+  }
 }
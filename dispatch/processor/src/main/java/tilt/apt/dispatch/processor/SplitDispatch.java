@@ -0,0 +1,188 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * Dispatches a switch that is too large for a single method. The index of the case is resolved
+ * first, by the {@link ClassValue}, the dispatch id or a sequence of small instanceof methods, and
+ * then picked from a balanced tree of helper methods that each switch over a few cases. Every
+ * helper stays under {@link MethodSize#FREQ_INLINE_SIZE}, so the tree is compiled and inlined like
+ * a small switch.
+ */
+final class SplitDispatch implements DispatchStrategy {
+  static final String LOCAL_CASE_INDEX = "caseIndex";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+  private final List<ParameterInMethod> cases;
+  private final int casesPerSwitch;
+
+  public SplitDispatch(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+    this.cases = new ArrayList<>(block.getCaseParameters());
+    this.casesPerSwitch = new MethodSize(block).getCasesPerSwitch();
+  }
+
+  @Override
+  public void appendMembers(Appendable w) throws IOException {
+    if (block.getStrategy() == Switch.Strategy.CLASS_VALUE) {
+      ClassValueDispatch.appendCaseIndexField(w, block);
+    } else if (block.getStrategy() == Switch.Strategy.EXACT_CLASS) {
+      ExactClassDispatch.appendExactCaseIndexMethod(w, ac, block);
+    } else if (block.getStrategy() == Switch.Strategy.INSTANCEOF) {
+      appendCaseIndexMethods(w);
+    }
+    appendSwitchMethods(w, 0, cases.size());
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    w.append(
+        formatStatement(String.format("final int %s = %s", LOCAL_CASE_INDEX, formatCaseIndex())));
+    w.append(String.format("if (%s >= 0) {\n", LOCAL_CASE_INDEX));
+    w.append(formatSwitchCall(0, cases.size()));
+    if (statements.isVoid() && statements.isReturning()) {
+      w.append(formatStatement("return"));
+    }
+    w.append("}\n");
+    w.append(statements.formatNoCase());
+  }
+
+  @Override
+  public boolean hasStaticState() {
+    return block.hasCaseIndexField() && block.getCaseIndexHolder() == null;
+  }
+
+  private String formatCaseIndex() {
+    switch (block.getStrategy()) {
+      case CLASS_VALUE:
+        return ClassValueDispatch.formatCaseIndex(block);
+      case EXACT_CLASS:
+        return ExactClassDispatch.formatCaseIndex(block);
+      case DISPATCH_ID:
+        return DispatchIdDispatch.formatCaseIndex(ac, block);
+      default:
+        return String.format(
+            "%s(%s)", formatCaseIndexMethodName(-1), block.getSwitchParameterName());
+    }
+  }
+
+  /**
+   * Appends the method that resolves the index of the case with instanceof, which calls one method
+   * per group of tests in the order of the cases.
+   */
+  private void appendCaseIndexMethods(Appendable w) throws IOException {
+    final int testsPerMethod = MethodSize.getTestsPerMethod();
+    final int groups = (cases.size() + testsPerMethod - 1) / testsPerMethod;
+    w.append(
+        String.format("private static int %s(final Object value)", formatCaseIndexMethodName(-1)));
+    ac.startBlock(w);
+    w.append(formatStatement("int index = " + formatCaseIndexMethodName(0) + "(value)"));
+    for (int group = 1; group < groups; group++) {
+      w.append("if (index < 0) {\n");
+      w.append(formatStatement("index = " + formatCaseIndexMethodName(group) + "(value)"));
+      w.append("}\n");
+    }
+    w.append(formatStatement("return index"));
+    ac.endBlock(w);
+    for (int group = 0; group < groups; group++) {
+      w.append(
+          String.format(
+              "private static int %s(final Object value)", formatCaseIndexMethodName(group)));
+      ac.startBlock(w);
+      final int to = Math.min(cases.size(), (group + 1) * testsPerMethod);
+      for (int index = group * testsPerMethod; index < to; index++) {
+        w.append(
+            String.format(
+                "if (value instanceof %s) {\n%s}\n",
+                cases.get(index).getParameterTypeName(), formatStatement("return " + index)));
+      }
+      w.append(formatStatement("return -1"));
+      ac.endBlock(w);
+    }
+  }
+
+  /** Appends the helper method for the cases from inclusive to exclusive and its children. */
+  private void appendSwitchMethods(Appendable w, final int from, final int to) throws IOException {
+    w.append(
+        ac.formatMethodDecl(
+            block.getSwitchMethodElement(),
+            s ->
+                block.isStatic()
+                    ? Stream.of(Modifier.PRIVATE, Modifier.STATIC)
+                    : Stream.of(Modifier.PRIVATE),
+            formatSwitchMethodName(from, to),
+            "final int " + LOCAL_CASE_INDEX));
+    ac.startBlock(w);
+    if (to - from <= casesPerSwitch) {
+      w.append(String.format("switch (%s) {\n", LOCAL_CASE_INDEX));
+      for (int index = from; index < to; index++) {
+        w.append(String.format("case %d:\n", index));
+        w.append(statements.formatCaseStatement(cases.get(index)));
+        if (statements.isReturning() == false) {
+          w.append(formatStatement("return"));
+        }
+      }
+      w.append("}\n");
+      if (statements.isVoid() == false) {
+        w.append(formatStatement(String.format("throw new AssertionError(%s)", LOCAL_CASE_INDEX)));
+      }
+      ac.endBlock(w);
+      return;
+    }
+    final int middle = getMiddle(from, to);
+    w.append(String.format("if (%s < %d) {\n", LOCAL_CASE_INDEX, middle));
+    w.append(formatSwitchCall(from, middle));
+    if (statements.isVoid()) {
+      w.append(formatStatement("return"));
+    }
+    w.append("}\n");
+    w.append(formatSwitchCall(middle, to));
+    ac.endBlock(w);
+    appendSwitchMethods(w, from, middle);
+    appendSwitchMethods(w, middle, to);
+  }
+
+  /** Returns where to split the cases, so that the leaves of both halves are full but the last. */
+  private int getMiddle(final int from, final int to) {
+    final int leaves = (to - from + casesPerSwitch - 1) / casesPerSwitch;
+    return from + (leaves + 1) / 2 * casesPerSwitch;
+  }
+
+  private String formatSwitchCall(final int from, final int to) {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final String call =
+        String.format(
+            "%s(%s)",
+            formatSwitchMethodName(from, to),
+            Stream.concat(
+                    Stream.of(LOCAL_CASE_INDEX),
+                    method.getParameters().stream().map(it -> it.getSimpleName().toString()))
+                .collect(Collectors.joining(", ")));
+    return formatStatement(statements.isVoid() ? call : "return " + call);
+  }
+
+  private String formatSwitchMethodName(final int from, final int to) {
+    return String.format(
+        "%s$cases%dto%d", block.getSwitchMethodElement().getSimpleName(), from, to - 1);
+  }
+
+  /** Returns the name of a group of instanceof tests, or of the method that runs all of them. */
+  private String formatCaseIndexMethodName(final int group) {
+    return block.getSwitchMethodElement().getSimpleName()
+        + "$caseIndex"
+        + (group < 0 ? "" : String.valueOf(group));
+  }
+}
@@ -0,0 +1,119 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * Chooses the strategy of a {@link Switch.Strategy#AUTO} switch. Case types that implement the
+ * generated dispatch id interface are dispatched by id, otherwise the choice is made by comparing
+ * the estimated cost of an instanceof chain with the cost of a {@link ClassValue} lookup. A closed
+ * hierarchy, such as that of a sealed type, is dispatched by a table of its exact classes, which
+ * HotSpot compiles to a few pointer comparisons or a tableswitch.
+ *
+ * <p>HotSpot checks a class with a depth below {@link #PRIMARY_SUPER_LIMIT} against a fixed slot of
+ * the supertype display, and a final class with a single pointer comparison. Interfaces and deeper
+ * classes are searched in the secondary supertypes array, which costs several times more.
+ */
+final class StrategySelection {
+  static final int MAX_CHAIN_CASES = 3;
+  static final int PRIMARY_SUPER_LIMIT = 8;
+  static final int COST_DISPLAY_CHECK = 1;
+  static final int COST_SECONDARY_CHECK = 6;
+  static final int COST_CLASS_VALUE = 16;
+  static final int MAX_EXACT_CLASSES = 64;
+
+  private final SourceVersion sourceVersion;
+  private final Elements elements;
+  private final HierarchyCache hierarchy;
+
+  public StrategySelection(
+      final SourceVersion sourceVersion, final Elements elements, final HierarchyCache hierarchy) {
+    this.sourceVersion = sourceVersion;
+    this.elements = elements;
+    this.hierarchy = hierarchy;
+  }
+
+  /** Returns the strategy to use and adds the reasons for it to the list. */
+  Switch.Strategy select(final SwitchBlock block, final List<String> reasons) {
+    final Switch.Strategy requested = block.getSwitch().strategy();
+    if (block.isValueSwitch()) {
+      reasons.add("switch on " + block.getSwitchParameterElement().asType());
+      return Switch.Strategy.VALUE;
+    }
+    if (block.isClassTokenSwitch()) {
+      reasons.add("switch on Class tokens");
+      return Switch.Strategy.CLASS_VALUE;
+    }
+    if (requested != Switch.Strategy.AUTO) {
+      reasons.add("requested");
+      return requested;
+    }
+    final String dispatchIdName =
+        new AnnotatedClass(elements, block.typeElement).getGeneratedDispatchIdSimpleName();
+    if (block.getCaseParameters().isEmpty() == false
+        && block
+            .getCaseParameters()
+            .stream()
+            .map(it -> asTypeElement(it.variableElement.asType()))
+            .allMatch(it -> it != null && hierarchy.hasSupertypeNamed(it, dispatchIdName))) {
+      reasons.add("case types implement " + dispatchIdName);
+      return Switch.Strategy.DISPATCH_ID;
+    }
+    final int count = block.getCaseParameters().size();
+    if (sourceVersion.compareTo(SourceVersion.RELEASE_7) < 0) {
+      reasons.add("ClassValue needs release 7, target is " + sourceVersion);
+      return Switch.Strategy.INSTANCEOF;
+    }
+    if (count <= MAX_CHAIN_CASES) {
+      reasons.add(String.format("%d cases", count));
+      return Switch.Strategy.INSTANCEOF;
+    }
+    int cost = 0;
+    int interfaces = 0;
+    int finals = 0;
+    int depth = 0;
+    final Map<String, Integer> widths = new HashMap<>();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final TypeElement typeElement = asTypeElement(caseParameter.variableElement.asType());
+      if (typeElement == null) {
+        continue;
+      }
+      final int caseDepth = hierarchy.getDepth(typeElement);
+      depth = Math.max(depth, caseDepth);
+      widths.merge(String.valueOf(typeElement.getSuperclass()), 1, Integer::sum);
+      if (typeElement.getKind() == ElementKind.INTERFACE) {
+        interfaces++;
+        cost += COST_SECONDARY_CHECK;
+      } else if (typeElement.getModifiers().contains(Modifier.FINAL)) {
+        finals++;
+        cost += COST_DISPLAY_CHECK;
+      } else {
+        cost += caseDepth < PRIMARY_SUPER_LIMIT ? COST_DISPLAY_CHECK : COST_SECONDARY_CHECK;
+      }
+    }
+    final int width = widths.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+    reasons.add(
+        String.format(
+            "%d cases, %d interfaces, %d final, depth %d, width %d",
+            count, interfaces, finals, depth, width));
+    final List<ExactClassDispatch.ExactClass> exactClasses = block.getExactClasses();
+    if (exactClasses != null && exactClasses.size() <= MAX_EXACT_CLASSES) {
+      reasons.add(String.format("closed hierarchy of %d classes", exactClasses.size()));
+      return Switch.Strategy.EXACT_CLASS;
+    }
+    // Among sibling case types half of the chain is tested before a case is found on average, in a
+    // narrow hierarchy an argument of a base type is tested against every more specific case first
+    final int chainCost = cost - cost * (Math.max(width, 1) - 1) / (2 * count);
+    reasons.add(String.format("chain cost %d vs class value cost %d", chainCost, COST_CLASS_VALUE));
+    return chainCost > COST_CLASS_VALUE ? Switch.Strategy.CLASS_VALUE : Switch.Strategy.INSTANCEOF;
+  }
+}
@@ -1,15 +1,33 @@
 package tilt.apt.dispatch.processor;
 
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import tilt.apt.dispatch.annotations.Memoize;
+import tilt.apt.dispatch.annotations.Switch;
 
 final class SwitchBlock {
   final TypeElement typeElement;
   private final ParameterInMethod switchParameter;
   private final Set<ParameterInMethod> caseParameters;
+  private boolean singleton;
+  private Switch.Strategy strategy;
+  private boolean split;
+  private String caseIndexHolder;
+  private String extensionName;
+  private ExecutableElement pipelineKey;
+  private List<ExactClassDispatch.ExactClass> exactClasses;
+  private Interceptors interceptors;
+  private List<ExactClassDispatch.ExactClass> hotClasses;
 
   public SwitchBlock(final TypeElement typeElement) {
     this(typeElement, null);
@@ -18,7 +36,7 @@ final class SwitchBlock {
   public SwitchBlock(final TypeElement typeElement, final ParameterInMethod switchParameter) {
     this.typeElement = typeElement;
     this.switchParameter = switchParameter;
-    this.caseParameters = new HashSet<>();
+    this.caseParameters = new LinkedHashSet<>();
   }
 
   public void addCaseParameter(final ParameterInMethod caseParameter) {
@@ -30,15 +48,163 @@ final class SwitchBlock {
       other.addCaseParameter(caseParameter);
     }
   }
-  
+
+  /** Returns true if the switch is a static method, dispatched by a generated static class. */
+  boolean isStatic() {
+    return switchParameter.isStatic();
+  }
+
+  /** Returns true if the switch is on the value of an enum, String or int parameter. */
+  boolean isValueSwitch() {
+    return switchParameter.isValueParameter();
+  }
+
+  /** Returns true if the switch is on a {@link Class} token rather than on an instance. */
+  boolean isClassTokenSwitch() {
+    return switchParameter.isClassTokenParameter();
+  }
+
+  /**
+   * Returns the type that selects a case, which is the type of the case parameter or, for a switch
+   * on Class tokens, the type the token stands for.
+   */
+  TypeMirror getCaseType(final ParameterInMethod caseParameter) {
+    return isClassTokenSwitch()
+        ? caseParameter.getTokenType()
+        : caseParameter.variableElement.asType();
+  }
+
+  /** Returns the qualified name of the erasure of the type that selects a case. */
+  Name getCaseTypeName(final ParameterInMethod caseParameter) {
+    return isClassTokenSwitch()
+        ? asTypeElement(caseParameter.getTokenType()).getQualifiedName()
+        : caseParameter.getParameterTypeName();
+  }
+
+  /** Replaces the cases, keeping the given order. */
+  void setCaseParameters(final List<ParameterInMethod> caseParameters) {
+    this.caseParameters.clear();
+    this.caseParameters.addAll(caseParameters);
+  }
+
+  /**
+   * Returns the simple name of the {@link GeneratedCaseIndex} whose {@link ClassValue} the switch
+   * shares, or null if the switch has its own.
+   */
+  String getCaseIndexHolder() {
+    return caseIndexHolder;
+  }
+
+  void setCaseIndexHolder(final String caseIndexHolder) {
+    this.caseIndexHolder = caseIndexHolder;
+  }
+
+  /**
+   * Returns the simple name of the generated extension interface of an extensible switch, or null
+   * if the switch is not extensible.
+   */
+  String getExtensionName() {
+    return extensionName;
+  }
+
+  void setExtensionName(final String extensionName) {
+    this.extensionName = extensionName;
+  }
+
+  /**
+   * Returns the classes of a closed hierarchy of the switch type with their case, or null if the
+   * hierarchy is open.
+   */
+  List<ExactClassDispatch.ExactClass> getExactClasses() {
+    return exactClasses;
+  }
+
+  void setExactClasses(final List<ExactClassDispatch.ExactClass> exactClasses) {
+    this.exactClasses = exactClasses;
+  }
+
+  /**
+   * Returns the classes the switch method tests before the other cases, hottest first, or null if
+   * the switch has no hot case.
+   */
+  List<ExactClassDispatch.ExactClass> getHotClasses() {
+    return hotClasses;
+  }
+
+  void setHotClasses(final List<ExactClassDispatch.ExactClass> hotClasses) {
+    this.hotClasses = hotClasses;
+  }
+
+  /** Returns the hooks of the interceptors of the switch, or null if it has none. */
+  Interceptors getInterceptors() {
+    return interceptors;
+  }
+
+  void setInterceptors(final Interceptors interceptors) {
+    this.interceptors = interceptors;
+  }
+
+  /** Returns true if the generated class maps classes to their case with a {@link ClassValue}. */
+  boolean hasCaseIndexField() {
+    return strategy == Switch.Strategy.CLASS_VALUE || strategy == Switch.Strategy.EXACT_CLASS;
+  }
+
+  /** Returns the key method of a {@link tilt.apt.dispatch.annotations.Pipeline}, or null. */
+  ExecutableElement getPipelineKey() {
+    return pipelineKey;
+  }
+
+  void setPipelineKey(final ExecutableElement pipelineKey) {
+    this.pipelineKey = pipelineKey;
+  }
+
   boolean hasSwitch() {
     return switchParameter != null;
   }
 
+  Switch getSwitch() {
+    return switchParameter.variableElement.getAnnotation(Switch.class);
+  }
+
+  boolean isSingleton() {
+    return singleton;
+  }
+
+  void setSingleton(final boolean singleton) {
+    this.singleton = singleton;
+  }
+
+  /** Returns the memoization of the switch method, or null if it is not memoized. */
+  Memoize getMemoize() {
+    return getSwitchMethodElement().getAnnotation(Memoize.class);
+  }
+
+  /** Returns the strategy in use, which is never {@link Switch.Strategy#AUTO}. */
+  Switch.Strategy getStrategy() {
+    return strategy;
+  }
+
+  void setStrategy(final Switch.Strategy strategy) {
+    this.strategy = strategy;
+  }
+
+  /** Returns true if the dispatch is spread over helper methods to keep each of them small. */
+  boolean isSplit() {
+    return split;
+  }
+
+  void setSplit(final boolean split) {
+    this.split = split;
+  }
+
   ExecutableElement getSwitchMethodElement() {
     return switchParameter.methodInType.methodElement;
   }
 
+  VariableElement getSwitchParameterElement() {
+    return switchParameter.variableElement;
+  }
+
   Name getSwitchParameterName() {
     return switchParameter.variableElement.getSimpleName();
   }
@@ -47,6 +213,44 @@ final class SwitchBlock {
     return caseParameters;
   }
 
+  /**
+   * Returns the name of the generated visitor method for a case parameter, which is {@code visit}
+   * followed by the simple name of the case type and, if that is taken by an earlier case, by the
+   * position of the case.
+   */
+  String getVisitMethodName(final ParameterInMethod caseParameter) {
+    return getUniqueName(caseParameter, it -> "visit" + it.getParameterSimpleName());
+  }
+
+  /**
+   * Returns the name of the constant that holds the dispatch id of a case parameter, which is the
+   * simple name of the case type in upper case and, if that is taken by an earlier case, the
+   * position of the case.
+   */
+  String getDispatchIdName(final ParameterInMethod caseParameter) {
+    return getUniqueName(
+        caseParameter,
+        it -> it.getParameterSimpleName().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase());
+  }
+
+  private String getUniqueName(
+      final ParameterInMethod caseParameter, final Function<ParameterInMethod, String> naming) {
+    final Set<String> names = new HashSet<>();
+    int index = 0;
+    for (final ParameterInMethod it : caseParameters) {
+      String name = naming.apply(it);
+      if (names.add(name) == false) {
+        name = name + index;
+        names.add(name);
+      }
+      if (it == caseParameter) {
+        return name;
+      }
+      index++;
+    }
+    throw new IllegalArgumentException("Not a case of " + this + ": " + caseParameter);
+  }
+
   @Override
   public String toString() {
     return String.format("%s => %s", switchParameter, caseParameters);
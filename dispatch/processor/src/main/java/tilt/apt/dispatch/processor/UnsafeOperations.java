@@ -3,6 +3,9 @@ package tilt.apt.dispatch.processor;
 import static tilt.apt.dispatch.processor.SafeOperations.asElement;
 import static tilt.apt.dispatch.processor.SafeOperations.getSimpleName;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
@@ -74,6 +77,48 @@ final class UnsafeOperations {
     }
   }
 
+  /**
+   * Returns true if the type element is sealed. Always false when running on a release without
+   * sealed classes.
+   */
+  static boolean isSealed(final TypeElement typeElement) {
+    return typeElement.getModifiers().stream().anyMatch(it -> it.name().equals("SEALED"));
+  }
+
+  /**
+   * Returns the permitted subclasses of a sealed type element. Always empty when running on a
+   * release without sealed classes, whose API is looked up by reflection.
+   */
+  @SuppressWarnings("unchecked")
+  static List<? extends TypeMirror> getPermittedSubclasses(final TypeElement typeElement) {
+    try {
+      return (List<? extends TypeMirror>)
+          TypeElement.class.getMethod("getPermittedSubclasses").invoke(typeElement);
+    } catch (ReflectiveOperationException e) {
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Returns true if the type element extends or implements a type of the simple name. Compares
+   * names only, so that a supertype generated later in this round is found as well.
+   */
+  static boolean hasSupertypeNamed(final TypeElement typeElement, final String simpleName) {
+    final List<TypeMirror> supertypes = new ArrayList<>(typeElement.getInterfaces());
+    supertypes.add(typeElement.getSuperclass());
+    for (final TypeMirror supertype : supertypes) {
+      final DeclaredType declaredType = asDeclaredType(supertype);
+      if (declaredType == null) {
+        continue;
+      }
+      if (getSimpleName(declaredType).equals(simpleName)
+          || hasSupertypeNamed(asElement(declaredType), simpleName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns the direct superclass (that is not being generated by this processor) of this type
    * element. If this type element represents an interface or the class java.lang.Object, then a
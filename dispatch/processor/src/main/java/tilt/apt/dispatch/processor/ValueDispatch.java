@@ -0,0 +1,125 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.UnsafeOperations.asTypeElement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import tilt.apt.dispatch.annotations.Case;
+
+/**
+ * Switches on the value of an enum, String or int argument. Enum constants, strings, int values and
+ * small ranges become the labels of a single switch statement, which javac compiles to an ordinal
+ * tableswitch, a hashed lookupswitch or a table or lookup switch on the ints. Larger ranges are
+ * found by a binary search over their sorted bounds after the switch.
+ */
+final class ValueDispatch implements DispatchStrategy {
+  static final int MAX_RANGE_LABELS = 16;
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public ValueDispatch(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    final String argument = block.getSwitchParameterName().toString();
+    final boolean primitive = block.getSwitchParameterElement().asType().getKind().isPrimitive();
+    final List<RangeCase> ranges = new ArrayList<>();
+    final StringBuilder cases = new StringBuilder();
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      final List<String> labels = new ArrayList<>();
+      final Case annotation = caseParameter.variableElement.getAnnotation(Case.class);
+      for (final String value : annotation.value()) {
+        labels.add(isString() ? ac.formatConstant(value) : value);
+      }
+      for (final int value : annotation.ints()) {
+        labels.add(String.valueOf(value));
+      }
+      for (final Case.Range range : annotation.ranges()) {
+        if ((long) range.to() - range.from() < MAX_RANGE_LABELS) {
+          for (long value = range.from(); value <= range.to(); value++) {
+            labels.add(String.valueOf(value));
+          }
+        } else {
+          ranges.add(new RangeCase(range, caseParameter));
+        }
+      }
+      if (labels.isEmpty()) {
+        continue;
+      }
+      for (final String label : labels) {
+        cases.append(String.format("case %s:\n", label));
+      }
+      cases.append(statements.formatCaseStatement(caseParameter));
+      if (statements.isReturning() == false) {
+        cases.append(formatStatement("break"));
+      }
+    }
+    if (primitive == false) {
+      w.append(String.format("if (%s != null) {\n", argument));
+    }
+    if (cases.length() > 0) {
+      w.append(String.format("switch (%s) {\n", argument));
+      w.append(cases);
+      w.append("}\n");
+    }
+    ranges.sort(Comparator.comparingInt(it -> it.range.from()));
+    if (ranges.isEmpty() == false) {
+      appendRangeSearch(w, argument, ranges, 0, ranges.size());
+    }
+    if (primitive == false) {
+      w.append("}\n");
+    }
+    w.append(statements.formatNoCase());
+  }
+
+  /** Appends a balanced tree of comparisons that finds the range of the argument among some. */
+  private void appendRangeSearch(
+      Appendable w,
+      final String argument,
+      final List<RangeCase> ranges,
+      final int from,
+      final int to)
+      throws IOException {
+    if (to - from == 1) {
+      final RangeCase it = ranges.get(from);
+      w.append(
+          String.format(
+              "if (%1$s >= %2$d && %1$s <= %3$d) {\n", argument, it.range.from(), it.range.to()));
+      w.append(statements.formatCaseStatement(it.caseParameter));
+      w.append("}\n");
+      return;
+    }
+    final int middle = (from + to) / 2;
+    w.append(String.format("if (%s < %d) {\n", argument, ranges.get(middle).range.from()));
+    appendRangeSearch(w, argument, ranges, from, middle);
+    w.append("} else {\n");
+    appendRangeSearch(w, argument, ranges, middle, to);
+    w.append("}\n");
+  }
+
+  private boolean isString() {
+    return Optional.ofNullable(asTypeElement(block.getSwitchParameterElement().asType()))
+        .map(it -> it.getQualifiedName().contentEquals(String.class.getName()))
+        .orElse(false);
+  }
+
+  private static final class RangeCase {
+    final Case.Range range;
+    final ParameterInMethod caseParameter;
+
+    RangeCase(final Case.Range range, final ParameterInMethod caseParameter) {
+      this.range = range;
+      this.caseParameter = caseParameter;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ExecutableElement;
+
+/**
+ * Lets the argument call back the {@code visitX} method for its type, which forwards to the case.
+ */
+final class VisitorDispatch implements DispatchStrategy {
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final CaseStatements statements;
+
+  public VisitorDispatch(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.statements = new CaseStatements(block);
+  }
+
+  @Override
+  public void appendMembers(Appendable w) throws IOException {
+    for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+      w.append("@Override\npublic ");
+      w.append(GeneratedVisitor.formatVisitMethodDecl(ac, block, caseParameter));
+      ac.startBlock(w);
+      w.append(GeneratedVisitor.formatVisitMethodImpl(ac, block, caseParameter));
+      ac.endBlock(w);
+    }
+  }
+
+  @Override
+  public void appendBody(Appendable w) throws IOException {
+    final ExecutableElement method = block.getSwitchMethodElement();
+    final String call =
+        String.format(
+            "%s.accept%s",
+            block.getSwitchParameterName(),
+            method
+                .getParameters()
+                .stream()
+                .map(
+                    it ->
+                        it.getSimpleName().equals(block.getSwitchParameterName())
+                            ? "this"
+                            : it.getSimpleName().toString())
+                .collect(Collectors.joining(", ", "(", ")")));
+    w.append(formatStatement(statements.isVoid() ? call : "return " + call));
+  }
+}
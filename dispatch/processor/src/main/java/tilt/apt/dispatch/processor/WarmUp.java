@@ -0,0 +1,153 @@
+package tilt.apt.dispatch.processor;
+
+import static tilt.apt.dispatch.processor.AnnotatedClass.formatStatement;
+import static tilt.apt.dispatch.processor.AnnotatedClass.wrapIfNonBlank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeMirror;
+import tilt.apt.dispatch.annotations.Switch;
+
+/**
+ * The static {@code warmUp} methods of a switch with {@link Switch#warmUp()}. The class literal of
+ * each case type loads the case and resolves its entry in the constant pool of the generated class,
+ * which the {@code instanceof} and {@code checkcast} of the switch share, and the {@link
+ * ClassValue} of {@link Switch.Strategy#CLASS_VALUE} and {@link Switch.Strategy#EXACT_CLASS} is
+ * filled for every case type. Without a ClassValue, loading and resolving the case types is the
+ * only effect, and the array of their class literals is dropped once the method returns.
+ *
+ * <p>A switch with a single parameter also gets an overload that calls the switch method with some
+ * samples, so that its profile and compiled code exist before the first real call.
+ */
+final class WarmUp {
+  static final String METHOD_WARM_UP = "warmUp";
+
+  private final AnnotatedClass ac;
+  private final SwitchBlock block;
+  private final ExecutableElement method;
+
+  public WarmUp(final AnnotatedClass ac, final SwitchBlock block) {
+    this.ac = ac;
+    this.block = block;
+    this.method = block.getSwitchMethodElement();
+  }
+
+  /** Returns true if the samples can be passed to the switch method on their own. */
+  boolean hasSamples() {
+    return method.getParameters().size() == 1 && method.getTypeParameters().isEmpty();
+  }
+
+  /**
+   * Appends the warm-up methods to the generated subclass or dispatcher. Those of the generated
+   * subclass hide the methods of the generated superclass and therefore share their access.
+   */
+  void appendMembers(Appendable w) throws IOException {
+    w.append(String.format("%sstatic void %s()", formatModifiers(), METHOD_WARM_UP));
+    ac.startBlock(w);
+    final List<String> caseTypes = new ArrayList<>();
+    if (block.isValueSwitch() == false) {
+      for (final ParameterInMethod caseParameter : block.getCaseParameters()) {
+        caseTypes.add(block.getCaseTypeName(caseParameter) + ".class");
+      }
+    }
+    if (block.getStrategy() == Switch.Strategy.DISPATCH_ID) {
+      caseTypes.add(ac.getGeneratedDispatchIdSimpleName() + ".class");
+    }
+    if (caseTypes.isEmpty() == false) {
+      w.append(
+          formatStatement(
+              caseTypes
+                  .stream()
+                  .collect(Collectors.joining(", ", "final Class<?>[] types = {", "}"))));
+      if (block.hasCaseIndexField()) {
+        w.append("for (final Class<?> type : types) {\n");
+        w.append(formatStatement(ClassValueDispatch.formatCaseIndexField(block) + ".get(type)"));
+        w.append("}\n");
+      }
+    }
+    ac.endBlock(w);
+    if (hasSamples() == false) {
+      return;
+    }
+    w.append(formatSamplesMethodDecl());
+    ac.startBlock(w);
+    w.append(formatStatement(METHOD_WARM_UP + "()"));
+    w.append("for (int i = 0; i < iterations; i++) {\n");
+    w.append(String.format("for (final %s sample : samples) {\n", formatSampleType()));
+    w.append(
+        formatStatement(
+            String.format(
+                "%s.%s(sample)",
+                block.isStatic() ? ac.getGeneratedDispatcherSimpleName() : "dispatcher",
+                method.getSimpleName())));
+    w.append("}\n");
+    w.append("}\n");
+    ac.endBlock(w);
+  }
+
+  /** Appends the methods of the generated superclass that delegate to the generated subclass. */
+  void appendDelegates(Appendable w) throws IOException {
+    w.append(String.format("%sstatic void %s()", formatModifiers(), METHOD_WARM_UP));
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format("%s.%s()", ac.getGeneratedSubclassSimpleName(), METHOD_WARM_UP)));
+    ac.endBlock(w);
+    if (hasSamples() == false) {
+      return;
+    }
+    w.append(formatSamplesMethodDecl());
+    ac.startBlock(w);
+    w.append(
+        formatStatement(
+            String.format(
+                "%s.%s(dispatcher, samples, iterations)",
+                ac.getGeneratedSubclassSimpleName(), METHOD_WARM_UP)));
+    ac.endBlock(w);
+  }
+
+  private String formatModifiers() {
+    return ac.isPublic() && block.isStatic() == false ? "public " : "";
+  }
+
+  private String formatSamplesMethodDecl() {
+    final List<String> parameters = new ArrayList<>();
+    if (block.isStatic() == false) {
+      parameters.add(String.format("final %s dispatcher", ac.getTypeName()));
+    }
+    parameters.add(String.format("final Iterable<? extends %s> samples", formatSampleType()));
+    parameters.add("final int iterations");
+    final String typeParameters =
+        block.isStatic()
+            ? ""
+            : ac.formatTypeParameterElements(
+                ac.getTypeParameterElements(), TypeParameterName.INSTANCE);
+    return String.format(
+        "%sstatic %svoid %s(%s)%s",
+        formatModifiers(),
+        wrapIfNonBlank(typeParameters, "", " "),
+        METHOD_WARM_UP,
+        String.join(", ", parameters),
+        wrapIfNonBlank(ac.formatMethodThrows(method), " ", ""));
+  }
+
+  /** Returns the type of a sample, boxing a primitive switch parameter. */
+  private String formatSampleType() {
+    final TypeMirror type = block.getSwitchParameterElement().asType();
+    switch (type.getKind()) {
+      case INT:
+        return Integer.class.getSimpleName();
+      case SHORT:
+        return Short.class.getSimpleName();
+      case CHAR:
+        return Character.class.getSimpleName();
+      case BYTE:
+        return Byte.class.getSimpleName();
+      default:
+        return type.accept(TypeArgumentName.INSTANCE, new AppendableString()).toString();
+    }
+  }
+}
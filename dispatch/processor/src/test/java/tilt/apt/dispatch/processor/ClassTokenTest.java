@@ -0,0 +1,67 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ClassTokenTest {
+  private static String kinds(final String... cases) {
+    final List<String> lines =
+        new ArrayList<>(
+            List.of(
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Kinds {",
+                "  public static class Base {}",
+                "  public interface Tag {}",
+                "  public interface Mark {}",
+                "  public static class Tagged extends Base implements Tag {}",
+                "  public static final class Plain extends Base {}",
+                "  public static final class Sealed {}",
+                "  public static String kind(@Switch Class<?> t) {",
+                "    return Kinds_GeneratedDispatcher.kind(t);",
+                "  }",
+                "  public static String run() {",
+                "    return kind(Base.class) + kind(Tagged.class) + kind(Plain.class) + kind(Object.class);",
+                "  }"));
+    lines.addAll(List.of(cases));
+    lines.add("}");
+    return String.join("\n", lines);
+  }
+
+  @Test
+  void resolvesATokenToTheMostSpecificCase() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            List.of("-Werror"),
+            kinds(
+                "  static String any(@Case Class<Object> t) { return \"?\"; }",
+                "  static String base(@Case Class<Base> t) { return \"b\"; }",
+                "  static String tagged(@Case Class<Tagged> t) { return \"t\"; }"));
+    assertEquals("btb?", compilation.call("demo.Kinds", "run"));
+  }
+
+  @Test
+  void lintsUnrelatedCasesThatAClassCanExtendOrImplementBoth() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            kinds(
+                "  static String base(@Case Class<Base> t) { return \"b\"; }",
+                "  static String tag(@Case Class<Tag> t) { return \"t\"; }",
+                "  static String mark(@Case Class<Mark> t) { return \"m\"; }",
+                "  static String sealed(@Case Class<Sealed> t) { return \"s\"; }",
+                "  static String any(@Case Class<Object> t) { return \"?\"; }"));
+    assertEquals("bbb?", compilation.call("demo.Kinds", "run"));
+    assertEquals(
+        List.of(
+            "Case is ambiguous with base, a token of a subtype of both demo.Kinds.Base and"
+                + " demo.Kinds.Tag resolves to base declared first",
+            "Case is ambiguous with base, a token of a subtype of both demo.Kinds.Base and"
+                + " demo.Kinds.Mark resolves to base declared first",
+            "Case is ambiguous with tag, a token of a subtype of both demo.Kinds.Tag and"
+                + " demo.Kinds.Mark resolves to tag declared first"),
+        compilation.warnings());
+  }
+}
@@ -0,0 +1,52 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CoalescingCasesTest {
+  private static String cache(final String executor) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "import java.util.concurrent.*;",
+        "public abstract class Cache {",
+        "  final CompletableFuture<String> thread = new CompletableFuture<>();",
+        "  public abstract void invalidate(@Switch Object o);",
+        "  void string(@Case(coalesce = \"key\", windowMillis = 1" + executor + ") String s) {",
+        "    thread.complete(Thread.currentThread().getName());",
+        "  }",
+        "  void other(@Case Object o) {}",
+        "  String key(String s) { return s; }",
+        "  Executor executor() { return it -> new Thread(it, \"cache\").start(); }",
+        "  public static String run() throws Exception {",
+        "    final Cache cache = new Cache_GeneratedSubclass();",
+        "    cache.invalidate(\"a\");",
+        "    return cache.thread.get(5, TimeUnit.SECONDS);",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void callsTheCaseOnTheExecutorAtTheEndOfTheWindow() throws Exception {
+    assertEquals(
+        "cache", Compilation.compile(cache(", executor = \"executor\"")).call("demo.Cache", "run"));
+  }
+
+  @Test
+  void callsTheCaseOnTheCommonPoolWithoutAnExecutor() throws Exception {
+    final Object thread = Compilation.compile(cache("")).call("demo.Cache", "run");
+    assertTrue(thread.toString().startsWith("ForkJoinPool.commonPool"), thread.toString());
+  }
+
+  @Test
+  void rejectsAnExecutorMethodThatIsMissing() {
+    final Compilation compilation = Compilation.compile(cache(", executor = \"pool\""));
+    assertEquals(false, compilation.isSuccess());
+    assertTrue(
+        compilation.errors().stream().anyMatch(it -> it.startsWith("No executor method pool")),
+        compilation.errors().toString());
+  }
+}
@@ -0,0 +1,225 @@
+package tilt.apt.dispatch.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles sources with the {@link DispatchProcessor} into a temporary directory, so that a test
+ * can read the generated sources, check the diagnostics and run the compiled classes.
+ */
+final class Compilation {
+  private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+  private static final Pattern TYPE = Pattern.compile("(?:class|interface|enum)\\s+(\\w+)");
+
+  private final Path sourceOutput;
+  private final Path classOutput;
+  private final List<Path> libraries;
+  private final boolean success;
+  private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+  private Compilation(
+      final Path sourceOutput,
+      final Path classOutput,
+      final List<Path> libraries,
+      final boolean success,
+      final List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+    this.sourceOutput = sourceOutput;
+    this.classOutput = classOutput;
+    this.libraries = libraries;
+    this.success = success;
+    this.diagnostics = diagnostics;
+  }
+
+  /** Compiles the sources, each named after its package and first type, with javac options. */
+  static Compilation compile(final List<String> options, final String... sources) {
+    return compile(List.of(), options, sources);
+  }
+
+  private static Compilation compile(
+      final List<Path> libraries, final List<String> options, final String... sources) {
+    try {
+      final Path directory = Files.createTempDirectory("tilt-dispatch-test");
+      return compile(
+          Files.createDirectories(directory.resolve("sources")),
+          Files.createDirectories(directory.resolve("classes")),
+          libraries,
+          options,
+          sources);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Compilation compile(
+      final Path sourceOutput,
+      final Path classOutput,
+      final List<Path> libraries,
+      final List<String> options,
+      final String... sources)
+      throws IOException {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    final List<String> classpath = new ArrayList<>();
+    classpath.add(classOutput.toString());
+    libraries.forEach(it -> classpath.add(it.toString()));
+    classpath.add(System.getProperty("java.class.path"));
+    final List<String> arguments = new ArrayList<>(options);
+    arguments.addAll(
+        List.of(
+            "--release",
+            "11",
+            "-classpath",
+            String.join(File.pathSeparator, classpath),
+            "-s",
+            sourceOutput.toString(),
+            "-d",
+            classOutput.toString()));
+    final List<JavaFileObject> units = new ArrayList<>();
+    for (final String source : sources) {
+      units.add(new Source(source));
+    }
+    try (final StandardJavaFileManager files =
+        compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+      final JavaCompiler.CompilationTask task =
+          compiler.getTask(null, files, diagnostics, arguments, null, units);
+      task.setProcessors(List.of(new DispatchProcessor()));
+      final boolean success = task.call();
+      return new Compilation(
+          sourceOutput, classOutput, libraries, success, diagnostics.getDiagnostics());
+    }
+  }
+
+  /** Compiles sources into a new output, with the classes of this compile as a library. */
+  Compilation compileAgainst(final List<String> options, final String... sources) {
+    return compile(List.of(classOutput), options, sources);
+  }
+
+  /**
+   * Compiles some sources again into the same output, as an incremental build does, with the
+   * classes of the previous compiles and the same libraries on the classpath.
+   */
+  Compilation recompile(final List<String> options, final String... sources) {
+    try {
+      return compile(sourceOutput, classOutput, libraries, options, sources);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static Compilation compile(final String... sources) {
+    return compile(List.of(), sources);
+  }
+
+  boolean isSuccess() {
+    return success;
+  }
+
+  List<String> errors() {
+    return messages(Diagnostic.Kind.ERROR);
+  }
+
+  List<String> warnings() {
+    return messages(Diagnostic.Kind.WARNING);
+  }
+
+  List<String> notes() {
+    return messages(Diagnostic.Kind.NOTE);
+  }
+
+  private List<String> messages(final Diagnostic.Kind kind) {
+    return diagnostics
+        .stream()
+        .filter(it -> it.getKind() == kind)
+        .map(it -> it.getMessage(Locale.ROOT))
+        .collect(Collectors.toList());
+  }
+
+  /** Returns a generated source by the qualified name of its class. */
+  String generated(final String qualifiedName) {
+    try {
+      return Files.readString(sourceOutput.resolve(qualifiedName.replace('.', '/') + ".java"));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns a generated resource by its path in the class output, or null if it is missing. */
+  String resource(final String path) {
+    final Path file = classOutput.resolve(path);
+    if (Files.exists(file) == false) {
+      return null;
+    }
+    try {
+      return Files.readString(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Calls a static method without parameters of a compiled class and returns its result. */
+  Object call(final String className, final String methodName) throws Exception {
+    if (success == false) {
+      throw new IllegalStateException("Compilation failed: " + errors());
+    }
+    final List<URL> urls = new ArrayList<>();
+    urls.add(classOutput.toUri().toURL());
+    for (final Path library : libraries) {
+      urls.add(library.toUri().toURL());
+    }
+    try (final URLClassLoader loader =
+        new URLClassLoader(urls.toArray(new URL[0]), Compilation.class.getClassLoader())) {
+      return loader.loadClass(className).getMethod(methodName).invoke(null);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static final class Source extends SimpleJavaFileObject {
+    private final String content;
+
+    Source(final String content) {
+      super(URI.create("string:///" + formatPath(content)), Kind.SOURCE);
+      this.content = content;
+    }
+
+    private static String formatPath(final String content) {
+      final Matcher packageMatcher = PACKAGE.matcher(content);
+      final Matcher typeMatcher = TYPE.matcher(content);
+      if (typeMatcher.find() == false) {
+        throw new IllegalArgumentException("No type in " + content);
+      }
+      return (packageMatcher.find() ? packageMatcher.group(1).replace('.', '/') + "/" : "")
+          + typeMatcher.group(1)
+          + Kind.SOURCE.extension;
+    }
+
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+      return content;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DispatchIdTest {
+  private static String bus(final String eventSupertype, final String switchType) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "public abstract class Bus {",
+        "  public interface Event" + eventSupertype + " {}",
+        "  public static final class Open implements Event, Bus_GeneratedDispatchId {",
+        "    public int dispatchId() { return OPEN; }",
+        "  }",
+        "  public static final class Close implements Event, Bus_GeneratedDispatchId {",
+        "    public int dispatchId() { return CLOSE; }",
+        "  }",
+        "  public abstract String on(@Switch " + switchType + " e);",
+        "  String open(@Case Open e) { return \"o\"; }",
+        "  String close(@Case Close e) { return \"c\"; }",
+        "  public static String run() {",
+        "    final Bus bus = new Bus_GeneratedSubclass();",
+        "    return bus.on(new Open()) + bus.on(new Close());",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void readsTheIdOfASwitchTypeThatImplementsTheInterface() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(List.of("-Werror"), bus(" extends Bus_GeneratedDispatchId", "Event"));
+    assertEquals("oc", compilation.call("demo.Bus", "run"));
+    final String generated = compilation.generated("demo.Bus_GeneratedSubclass");
+    assertTrue(generated.contains("switch (e == null ? -1 : e.dispatchId()) {"), generated);
+  }
+
+  @Test
+  void lintsTheTestOfASwitchTypeThatDoesNotImplementTheInterface() throws Exception {
+    final Compilation compilation = Compilation.compile(bus("", "Event"));
+    assertEquals("oc", compilation.call("demo.Bus", "run"));
+    final String generated = compilation.generated("demo.Bus_GeneratedSubclass");
+    assertTrue(
+        generated.contains(
+            String.join(
+                "\n",
+                "    switch (e instanceof Bus_GeneratedDispatchId",
+                "        ? ((Bus_GeneratedDispatchId) e).dispatchId()",
+                "        : -1) {")),
+        generated);
+    assertEquals(
+        List.of(
+            "Switch type demo.Bus.Event does not implement Bus_GeneratedDispatchId, every call"
+                + " tests and casts the argument before it reads the id"),
+        compilation.warnings());
+  }
+}
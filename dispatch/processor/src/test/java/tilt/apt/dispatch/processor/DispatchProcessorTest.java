@@ -0,0 +1,110 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DispatchProcessorTest {
+  private static final String NAMES =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public abstract class Names {",
+          "  public abstract String name(@Switch Object o);",
+          "  String string(@Case String s) { return \"s\"; }",
+          "  String other(@Case Object o) { return \"o\"; }",
+          "  public static String run() { return new Names_GeneratedSubclass().name(\"\"); }",
+          "}");
+
+  @Test
+  void formatsGeneratedSources() throws Exception {
+    final Compilation compilation = Compilation.compile(NAMES);
+    assertEquals("s", compilation.call("demo.Names", "run"));
+    assertTrue(compilation.generated("demo.Names_GeneratedSubclass").contains("\n  @Override\n"));
+  }
+
+  @Test
+  void writesUnformattedSourcesWithoutTheFormatter() throws Exception {
+    final Compilation compilation = Compilation.compile(List.of("-Adispatch.format=false"), NAMES);
+    assertEquals("s", compilation.call("demo.Names", "run"));
+    final String generated = compilation.generated("demo.Names_GeneratedSubclass");
+    assertTrue(generated.contains("\n@Override\n"), generated);
+    assertFalse(generated.contains("\n  "), generated);
+  }
+
+  @Test
+  void rejectsMemoizeOnAPrimitiveSwitch() {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public abstract class Op {",
+                "  @Memoize public abstract String name(@Switch int op);",
+                "  String one(@Case(ints = 1) int op) { return \"one\"; }",
+                "}"));
+    assertFalse(compilation.isSuccess());
+    assertTrue(
+        compilation
+            .errors()
+            .contains(
+                "@Memoize requires a non-static method with a result and a single @Switch"
+                    + " parameter of a reference type"),
+        compilation.errors().toString());
+  }
+
+  @Test
+  void lintsInterfacesOnlyUnderARequestedInstanceof() {
+    final String auto =
+        String.join(
+            "\n",
+            "package demo;",
+            "import tilt.apt.dispatch.annotations.*;",
+            "public class Two {",
+            "  public static String f(@Switch Object o) { return Two_GeneratedDispatcher.f(o); }",
+            "  static String r(@Case Runnable r) { return \"r\"; }",
+            "  static String c(@Case CharSequence c) { return \"c\"; }",
+            "}");
+    final Compilation autoCompilation = Compilation.compile(List.of("-Werror"), auto);
+    assertTrue(autoCompilation.isSuccess(), autoCompilation.warnings().toString());
+
+    final Compilation requested =
+        Compilation.compile(
+            auto.replace(
+                "@Switch Object", "@Switch(strategy = Switch.Strategy.INSTANCEOF) Object"));
+    assertEquals(2, requested.warnings().size(), requested.warnings().toString());
+    assertTrue(requested.warnings().get(0).startsWith("Interface java.lang."));
+  }
+
+  @Test
+  void lintsUnreachableCasesAndBoxedResults() {
+    final String source =
+        String.join(
+            "\n",
+            "package demo;",
+            "import tilt.apt.dispatch.annotations.*;",
+            "public class Late {",
+            "  public static int f(@Switch(strategy = Switch.Strategy.INSTANCEOF) Object o) {",
+            "    return Late_GeneratedDispatcher.f(o);",
+            "  }",
+            "  static int c(@Case CharSequence c) { return 1; }",
+            "  static Integer s(@Case String s) { return 2; }",
+            "}");
+    final List<String> lints =
+        List.of(
+            "Interface java.lang.CharSequence is tested by a scan of the secondary supertypes,"
+                + " strategy CLASS_VALUE or DISPATCH_ID avoids it",
+            "Case is never reached, c takes java.lang.String first",
+            "Case returns java.lang.Integer, which is unboxed to int on every call");
+    assertEquals(lints, Compilation.compile(source).warnings());
+    assertEquals(lints, Compilation.compile(List.of("-Adispatch.lint=error"), source).errors());
+    final Compilation none = Compilation.compile(List.of("-Adispatch.lint=none"), source);
+    assertTrue(none.isSuccess());
+    assertEquals(List.of(), none.warnings());
+  }
+}
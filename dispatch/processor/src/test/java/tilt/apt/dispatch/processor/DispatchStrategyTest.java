@@ -0,0 +1,221 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DispatchStrategyTest {
+  private static final String SHAPES =
+      String.join(
+          "\n",
+          "package demo;",
+          "public class Shapes {",
+          "  static class Shape {}",
+          "  static class Circle extends Shape {}",
+          "  static class Square extends Shape {}",
+          "  static class Big extends Square {}",
+          "  static final class Line extends Shape {}",
+          "}");
+
+  private static String names(final String switchAnnotation) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "import demo.Shapes.*;",
+        "public class Names {",
+        "  static String name(" + switchAnnotation + " Shape s) {",
+        "    return Names_GeneratedDispatcher.name(s);",
+        "  }",
+        "  static String circle(@Case Circle c) { return \"c\"; }",
+        "  static String big(@Case Big b) { return \"B\"; }",
+        "  static String square(@Case Square s) { return \"s\"; }",
+        "  static String line(@Case Line l) { return \"l\"; }",
+        "  static String other(@Case Shape s) { return \"?\"; }",
+        "  public static String run() {",
+        "    return name(new Circle()) + name(new Square()) + name(new Big()) + name(new Line())",
+        "        + name(new Shape()) + name(new Square() {});",
+        "  }",
+        "}");
+  }
+
+  private static Compilation compile(final List<String> options, final String switchAnnotation)
+      throws Exception {
+    final Compilation compilation = Compilation.compile(options, SHAPES, names(switchAnnotation));
+    assertEquals("csBl?s", compilation.call("demo.Names", "run"));
+    return compilation;
+  }
+
+  @Test
+  void dispatchesWithEveryClassStrategy() throws Exception {
+    for (final String strategy :
+        new String[] {"AUTO", "INSTANCEOF", "CLASS_VALUE", "EXACT_CLASS"}) {
+      compile(List.of(), "@Switch(strategy = Switch.Strategy." + strategy + ")");
+    }
+  }
+
+  @Test
+  void testsTheExactClassesOfAClosedHierarchy() throws Exception {
+    final String generated =
+        compile(List.of(), "@Switch(strategy = Switch.Strategy.EXACT_CLASS)")
+            .generated("demo.Names_GeneratedDispatcher");
+    assertTrue(generated.contains("== demo.Shapes.Line.class"), generated);
+  }
+
+  @Test
+  void splitsALargeSwitchMethod() throws Exception {
+    final String generated =
+        compile(
+                List.of("-Adispatch.splitSize=40"),
+                "@Switch(strategy = Switch.Strategy.INSTANCEOF)")
+            .generated("demo.Names_GeneratedDispatcher");
+    assertTrue(generated.contains("name$cases"), generated);
+  }
+
+  @Test
+  void neverSplitsWithASplitSizeOfZero() throws Exception {
+    final String generated =
+        compile(List.of("-Adispatch.splitSize=0"), "@Switch(strategy = Switch.Strategy.INSTANCEOF)")
+            .generated("demo.Names_GeneratedDispatcher");
+    assertFalse(generated.contains("name$cases"), generated);
+  }
+
+  @Test
+  void testsHotCasesFirstAndCallsAColdMethod() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            SHAPES, names("@Switch").replace("@Case Circle", "@Case(hot = true) Circle"));
+    assertEquals("csBl?s", compilation.call("demo.Names", "run"));
+    final String generated = compilation.generated("demo.Names_GeneratedDispatcher");
+    assertTrue(generated.contains("hotType == demo.Shapes.Circle.class"), generated);
+    assertTrue(generated.contains("name$cold("), generated);
+  }
+
+  @Test
+  void choosesInstanceofForAFewCases() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            List.of("-Adebug"),
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Few {",
+                "  static String name(@Switch Object o) { return Few_GeneratedDispatcher.name(o); }",
+                "  static String string(@Case String s) { return \"s\"; }",
+                "  static String integer(@Case Integer i) { return \"i\"; }",
+                "  public static String run() { return name(\"\") + name(1); }",
+                "}"));
+    assertEquals("si", compilation.call("demo.Few", "run"));
+    assertTrue(
+        compilation.notes().contains("demo.Few strategy: INSTANCEOF (2 cases)"),
+        compilation.notes().toString());
+  }
+
+  @Test
+  void choosesAClassValueForManyInterfaces() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            List.of("-Adebug"),
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Ifaces {",
+                "  static String name(@Switch Object o) { return Ifaces_GeneratedDispatcher.name(o); }",
+                "  static String runnable(@Case Runnable r) { return \"r\"; }",
+                "  static String chars(@Case CharSequence c) { return \"c\"; }",
+                "  static String iterable(@Case Iterable<?> i) { return \"i\"; }",
+                "  static String closeable(@Case AutoCloseable a) { return \"a\"; }",
+                "  static String number(@Case Number n) { return \"n\"; }",
+                "  static String map(@Case java.util.Map<?, ?> m) { return \"m\"; }",
+                "  public static String run() {",
+                "    return name(\"\") + name(1) + name(java.util.List.of()) + name(java.util.Map.of());",
+                "  }",
+                "}"));
+    assertEquals("cnim", compilation.call("demo.Ifaces", "run"));
+    assertTrue(
+        compilation
+            .notes()
+            .stream()
+            .anyMatch(
+                it -> it.startsWith("demo.Ifaces strategy: CLASS_VALUE (6 cases, 5 interfaces")),
+        compilation.notes().toString());
+  }
+
+  @Test
+  void dispatchesValuesByTable() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Codes {",
+                "  public static String op(@Switch int op) { return Codes_GeneratedDispatcher.op(op); }",
+                "  static String nop(@Case(ints = 0) int op) { return \"n\"; }",
+                "  static String load(@Case(ints = {1, 2}, ranges = @Case.Range(from = 10, to = 12))"
+                    + " int op) {",
+                "    return \"l\";",
+                "  }",
+                "  static String big(@Case(ranges = @Case.Range(from = 100, to = 199)) int op) {",
+                "    return \"b\";",
+                "  }",
+                "  public static String run() {",
+                "    String result = \"\";",
+                "    for (int op : new int[] {0, 1, 2, 11, 150, 199}) {",
+                "      result += op(op);",
+                "    }",
+                "    try {",
+                "      op(3);",
+                "    } catch (IllegalArgumentException e) {",
+                "      result += \"!\";",
+                "    }",
+                "    return result;",
+                "  }",
+                "}"));
+    assertEquals("nlllbb!", compilation.call("demo.Codes", "run"));
+  }
+
+  @Test
+  void dispatchesEnumAndStringValues() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "import java.util.concurrent.TimeUnit;",
+                "public class Units {",
+                "  static String unit(@Switch TimeUnit u) { return Units_GeneratedDispatcher.unit(u); }",
+                "  static String small(@Case({\"NANOSECONDS\", \"MICROSECONDS\"}) TimeUnit u) {",
+                "    return \"s\";",
+                "  }",
+                "  static String days(@Case(\"DAYS\") TimeUnit u) { return \"d\"; }",
+                "  public static String run() {",
+                "    return unit(TimeUnit.NANOSECONDS) + unit(TimeUnit.MICROSECONDS)",
+                "        + unit(TimeUnit.DAYS) + Words.run();",
+                "  }",
+                "}"),
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Words {",
+                "  static String word(@Switch String w) { return Words_GeneratedDispatcher.word(w); }",
+                "  static String yes(@Case({\"y\", \"yes\"}) String w) { return \"+\"; }",
+                "  static String no(@Case(\"no\") String w) { return \"-\"; }",
+                "  static String run() {",
+                "    try {",
+                "      return word(\"y\") + word(\"yes\") + word(\"no\") + word(\"n\");",
+                "    } catch (IllegalArgumentException e) {",
+                "      return word(\"y\") + word(\"yes\") + word(\"no\") + \"!\";",
+                "    }",
+                "  }",
+                "}"));
+    assertEquals("ssd++-!", compilation.call("demo.Units", "run"));
+  }
+}
@@ -0,0 +1,62 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GeneratedCaseIndexTest {
+  private static String names(final String name, final String cases) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "public class " + name + " {",
+        "  static String name(@Switch(strategy = Switch.Strategy.CLASS_VALUE) Object o) {",
+        "    return " + name + "_GeneratedDispatcher.name(o);",
+        "  }",
+        cases,
+        "  public static String run() { return name(\"\") + name(1) + name(1L); }",
+        "}");
+  }
+
+  private static final String CASES =
+      String.join(
+          "\n",
+          "  static String string(@Case CharSequence s) { return \"s\"; }",
+          "  static String number(@Case Number n) { return \"n\"; }");
+
+  @Test
+  void sharesOneClassValueBetweenSwitchesWithTheSameCaseTypes() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            names("Audit", CASES),
+            names("Labels", CASES.replace("string(", "chars(").replace("\"s\"", "\"c\"")));
+    assertEquals("snn", compilation.call("demo.Audit", "run"));
+    assertEquals("cnn", compilation.call("demo.Labels", "run"));
+    assertTrue(
+        compilation
+            .generated("demo.Audit_GeneratedCaseIndex")
+            .contains("static final ClassValue<Integer> CASE_INDEX ="));
+    for (final String name : new String[] {"Audit", "Labels"}) {
+      final String generated = compilation.generated("demo." + name + "_GeneratedDispatcher");
+      assertTrue(
+          generated.contains("Audit_GeneratedCaseIndex.CASE_INDEX.get(o.getClass())"), generated);
+    }
+  }
+
+  @Test
+  void keepsAClassValueOfItsOwnForOtherCaseTypes() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            names("Audit", CASES), names("Labels", CASES.replace("Number", "Object")));
+    assertEquals("snn", compilation.call("demo.Audit", "run"));
+    assertEquals("snn", compilation.call("demo.Labels", "run"));
+    assertNull(compilation.resource("demo/Audit_GeneratedCaseIndex.class"));
+    assertNull(compilation.resource("demo/Labels_GeneratedCaseIndex.class"));
+    final String generated = compilation.generated("demo.Labels_GeneratedDispatcher");
+    assertTrue(
+        generated.contains("private static final ClassValue<Integer> CASE_INDEX"), generated);
+  }
+}
@@ -0,0 +1,51 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class GeneratedDispatcherTest {
+  @Test
+  void callsTheStaticCasesWithoutASubclass() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public class Few {",
+                "  static String name(@Switch Object o) { return Few_GeneratedDispatcher.name(o); }",
+                "  static String string(@Case String s) { return \"s\"; }",
+                "  static String integer(@Case Integer i) { return \"i\"; }",
+                "  public static String run() {",
+                "    try {",
+                "      return name(\"\") + name(1) + name(1L);",
+                "    } catch (IllegalArgumentException e) {",
+                "      return name(\"\") + name(1) + \"!\";",
+                "    }",
+                "  }",
+                "}"));
+    assertEquals("si!", compilation.call("demo.Few", "run"));
+    assertEquals(
+        String.join(
+            "\n",
+            "package demo;",
+            "",
+            "final class Few_GeneratedDispatcher {",
+            "  private Few_GeneratedDispatcher() {}",
+            "",
+            "  static java.lang.String name(java.lang.Object o) {",
+            "    if (o instanceof java.lang.String) {",
+            "      return demo.Few.string((java.lang.String) o);",
+            "    } else if (o instanceof java.lang.Integer) {",
+            "      return demo.Few.integer((java.lang.Integer) o);",
+            "    }",
+            "    throw new IllegalArgumentException(\"No @Case for \" + o);",
+            "  }",
+            "}",
+            ""),
+        compilation.generated("demo.Few_GeneratedDispatcher"));
+    assertNull(compilation.resource("demo/Few_GeneratedSubclass.class"));
+  }
+}
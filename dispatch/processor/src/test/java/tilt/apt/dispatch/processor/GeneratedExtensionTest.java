@@ -0,0 +1,55 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class GeneratedExtensionTest {
+  private static final String NAMES =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public class Names {",
+          "  public static String name(@Switch(extensible = true) Number n) {",
+          "    return Names_GeneratedDispatcher.name(n);",
+          "  }",
+          "  static String integer(@Case Integer i) { return \"i\"; }",
+          "}");
+
+  private static final String PLUGIN =
+      String.join(
+          "\n",
+          "package plugin;",
+          "import demo.*;",
+          "public class Plugin implements Names_GeneratedExtension {",
+          "  final Class<?> type;",
+          "  final String name;",
+          "  Plugin(Class<?> type, String name) {",
+          "    this.type = type;",
+          "    this.name = name;",
+          "  }",
+          "  @Override public Class<?> caseType() { return type; }",
+          "  @Override public String name(Number n) { return name; }",
+          "  public static String run() {",
+          "    Names_GeneratedExtension.register(new Plugin(Number.class, \"n\"));",
+          "    Names_GeneratedExtension.register(new Plugin(Long.class, \"L\"));",
+          "    return Names.name(1) + Names.name(2L) + Names.name(3.0);",
+          "  }",
+          "}");
+
+  @Test
+  void callsTheExtensionOfAPluginCompiledAfterTheSwitch() throws Exception {
+    final Compilation switches = Compilation.compile(NAMES);
+    final String generated = switches.generated("demo.Names_GeneratedExtension");
+    assertTrue(
+        generated.contains(
+            "public interface Names_GeneratedExtension"
+                + " extends tilt.apt.dispatch.runtime.CaseExtension {"),
+        generated);
+    assertTrue(generated.contains("static void register("), generated);
+    assertEquals("iLn", switches.compileAgainst(List.of(), PLUGIN).call("plugin.Plugin", "run"));
+  }
+}
@@ -0,0 +1,71 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class GeneratedFlowSubscriberTest {
+  private static String feed(final String flowSubscriber, final String arguments) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "import java.util.concurrent.SubmissionPublisher;",
+        "public abstract class Feed {",
+        "  final StringBuffer log = new StringBuffer();",
+        "  final java.util.Set<String> threads = java.util.concurrent.ConcurrentHashMap.newKeySet();",
+        "  " + flowSubscriber,
+        "  public abstract void feed(@Switch Number n);",
+        "  void integer(@Case Integer i) { log(\"i\"); }",
+        "  void other(@Case Number n) { log(\"n\"); }",
+        "  void log(final String s) {",
+        "    log.append(s);",
+        "    threads.add(Thread.currentThread().getName());",
+        "  }",
+        "  public static String run() throws Exception {",
+        "    final Feed feed = new Feed_GeneratedSubclass();",
+        "    final Feed_GeneratedFlowSubscriber subscriber =",
+        "        new Feed_GeneratedFlowSubscriber(" + arguments + ");",
+        "    final String idle;",
+        "    try (SubmissionPublisher<Number> publisher = new SubmissionPublisher<>()) {",
+        "      publisher.subscribe(subscriber);",
+        "      for (Number n : new Number[] {1, 2L, 3, 4, 5, 6L}) {",
+        "        publisher.submit(n);",
+        "      }",
+        "      Thread.sleep(500);",
+        "      idle = feed.log.toString();",
+        "    }",
+        "    subscriber.completion().get();",
+        "    return idle + \" \" + feed.log + \" \" + feed.threads.contains(\"dispatch-timer\")",
+        "        + \" \" + feed.threads.contains(\"flush\");",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void dispatchesAPartialBatchAfterTheDelay() throws Exception {
+    assertEquals(
+        "iiinin iiinin false false",
+        Compilation.compile(feed("@FlowSubscriber(batchSize = 4, maxDelayMillis = 20)", "feed"))
+            .call("demo.Feed", "run"));
+  }
+
+  @Test
+  void dispatchesAPartialBatchOnTheGivenExecutor() throws Exception {
+    assertEquals(
+        "iiinin iiinin false true",
+        Compilation.compile(
+                feed(
+                    "@FlowSubscriber(batchSize = 4, maxDelayMillis = 20)",
+                    "feed, 4, task -> new Thread(task, \"flush\").start()"))
+            .call("demo.Feed", "run"));
+  }
+
+  @Test
+  void holdsAPartialBatchUntilCompletionWithoutADelay() throws Exception {
+    assertEquals(
+        "iiin iiinin false false",
+        Compilation.compile(feed("@FlowSubscriber(batchSize = 4, maxDelayMillis = 0)", "feed"))
+            .call("demo.Feed", "run"));
+  }
+}
@@ -0,0 +1,56 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class GeneratedHandleTest {
+  private static String source(final String strategy) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "public class Kinds {",
+        "  public interface I {}",
+        "  public static class A {}",
+        "  public static class B {}",
+        "  public static class C extends B {}",
+        "  public static class D extends B implements I {}",
+        "  public static final class F implements I {}",
+        "  public static int f(@Switch(handles = true, strategy = Switch.Strategy."
+            + strategy
+            + ")"
+            + " Object o) {",
+        "    return Kinds_GeneratedDispatcher.f(o);",
+        "  }",
+        "  static int a(@Case A a) { return 1; }",
+        "  static int c(@Case C c) { return 3; }",
+        "  static int b(@Case B b) { return 2; }",
+        "  static int i(@Case I i) { return 4; }",
+        "  public static String run() {",
+        "    return \"\" + Kinds_GeneratedHandle.resolve(B.class).f(new C())",
+        "        + Kinds_GeneratedHandle.resolve(B.class).f(new D())",
+        "        + Kinds_GeneratedHandle.resolve(C.class).f(new C())",
+        "        + Kinds_GeneratedHandle.resolve(F.class).f(new F())",
+        "        + Kinds_GeneratedHandle.resolve(Object.class).f(new A());",
+        "  }",
+        "  public static boolean isDirect() {",
+        "    return (Object) Kinds_GeneratedHandle.resolve(F.class)",
+        "        != Kinds_GeneratedHandle.resolve(Object.class);",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void resolvesASupertypeOfACaseToTheSwitchMethod() throws Exception {
+    for (final String strategy : new String[] {"INSTANCEOF", "CLASS_VALUE"}) {
+      final Compilation compilation = Compilation.compile(source(strategy));
+      assertEquals("32341", compilation.call("demo.Kinds", "run"), strategy);
+    }
+  }
+
+  @Test
+  void resolvesAFinalClassToItsCase() throws Exception {
+    assertEquals(true, Compilation.compile(source("INSTANCEOF")).call("demo.Kinds", "isDirect"));
+  }
+}
@@ -0,0 +1,71 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import tilt.apt.dispatch.runtime.DispatchIndex;
+
+class GeneratedIndexTest {
+  private static final String SHARED =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public abstract class Shared extends Shared_GeneratedSuperclass<Object> {",
+          "  public abstract String name(@Switch Object o);",
+          "  String string(@Case String s) { return \"s\"; }",
+          "  String other(@Case Object o) { return \"o\"; }",
+          "}");
+
+  private static final String STATIC =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public class Static {",
+          "  public static String name(@Switch Number n) {",
+          "    return Static_GeneratedDispatcher.name(n);",
+          "  }",
+          "  static String integer(@Case Integer i) { return \"i\"; }",
+          "}");
+
+  @Test
+  void listsEveryDispatcherWithItsFactoriesAndCaseTypes() {
+    final Compilation compilation = Compilation.compile(SHARED, STATIC);
+    assertEquals(
+        String.join(
+            "\n",
+            DispatchIndex.HEADER + DispatchIndex.VERSION,
+            "demo.Shared\tdemo.Shared_GeneratedSubclass\tnewInstance() instance()"
+                + "\tjava.lang.String java.lang.Object",
+            "demo.Static\tdemo.Static_GeneratedDispatcher\t\tjava.lang.Integer",
+            ""),
+        compilation.resource(DispatchIndex.RESOURCE));
+  }
+
+  @Test
+  void keepsTheLinesOfClassesNotCompiledAgain() {
+    final Compilation compilation =
+        Compilation.compile(SHARED, STATIC)
+            .recompile(List.of(), STATIC.replace("Integer", "Long").replace("integer", "along"));
+    assertEquals(
+        String.join(
+            "\n",
+            DispatchIndex.HEADER + DispatchIndex.VERSION,
+            "demo.Shared\tdemo.Shared_GeneratedSubclass\tnewInstance() instance()"
+                + "\tjava.lang.String java.lang.Object",
+            "demo.Static\tdemo.Static_GeneratedDispatcher\t\tjava.lang.Long",
+            ""),
+        compilation.resource(DispatchIndex.RESOURCE));
+  }
+
+  @Test
+  void skipsTheIndexWhenTurnedOff() {
+    final Compilation compilation =
+        Compilation.compile(List.of("-Adispatch.index=false"), SHARED, STATIC);
+    assertEquals(List.of(), compilation.errors());
+    assertNull(compilation.resource(DispatchIndex.RESOURCE));
+  }
+}
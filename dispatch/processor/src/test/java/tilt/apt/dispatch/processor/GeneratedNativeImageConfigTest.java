@@ -0,0 +1,65 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import tilt.apt.dispatch.runtime.DispatchIndex;
+
+class GeneratedNativeImageConfigTest {
+  private static final String DIRECTORY = "META-INF/native-image/com.example/app/";
+  private static final String SHARED =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public abstract class Shared extends Shared_GeneratedSuperclass<Object> {",
+          "  public abstract String name(@Switch Object o);",
+          "  String string(@Case String s) { return \"s\"; }",
+          "  String other(@Case Object o) { return \"o\"; }",
+          "}");
+
+  @Test
+  void makesTheIndexedClassesLoadable() {
+    final Compilation compilation =
+        Compilation.compile(List.of("-Adispatch.nativeImage=com.example/app"), SHARED);
+    assertEquals(
+        String.join(
+            "\n",
+            "[",
+            "  {\"name\": \"demo.Shared\"},",
+            "  {\"name\": \"demo.Shared_GeneratedSubclass\"},",
+            "  {\"name\": \"demo.Shared_GeneratedSuperclass\", \"methods\": ["
+                + "{\"name\": \"newInstance\", \"parameterTypes\": []}, "
+                + "{\"name\": \"instance\", \"parameterTypes\": []}]}",
+            "]",
+            ""),
+        compilation.resource(DIRECTORY + "reflect-config.json"));
+    assertTrue(
+        compilation
+            .resource(DIRECTORY + "resource-config.json")
+            .contains("{\"pattern\": \"\\\\Q" + DispatchIndex.RESOURCE + "\\\\E\"}"));
+    assertNull(compilation.resource(DIRECTORY + "native-image.properties"));
+  }
+
+  @Test
+  void initializesDispatchStateAtBuildTimeOnRequest() {
+    final Compilation compilation =
+        Compilation.compile(
+            List.of(
+                "-Adispatch.nativeImage=com.example/app", "-Adispatch.nativeImageBuildTime=true"),
+            SHARED);
+    assertEquals(
+        "Args = --initialize-at-build-time=demo.Shared_GeneratedSubclass\n",
+        compilation.resource(DIRECTORY + "native-image.properties"));
+  }
+
+  @Test
+  void writesNothingWithoutTheOption() {
+    final Compilation compilation = Compilation.compile(SHARED);
+    assertEquals(List.of(), compilation.errors());
+    assertNull(compilation.resource(DIRECTORY + "reflect-config.json"));
+  }
+}
@@ -0,0 +1,61 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class GeneratedPipelineTest {
+  private static final String LANE =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "import java.util.List;",
+          "import java.util.concurrent.CopyOnWriteArrayList;",
+          "public abstract class Lane {",
+          "  final List<String> seen = new CopyOnWriteArrayList<>();",
+          "  @Pipeline(capacity = 8, batchSize = 4)",
+          "  public abstract void lane(@Switch CharSequence s) throws java.io.IOException;",
+          "  void string(@Case String s) throws java.io.IOException {",
+          "    if (s.equals(\"bad\")) {",
+          "      throw new java.io.IOException(s);",
+          "    }",
+          "    seen.add(s);",
+          "  }",
+          "  public static String run() throws InterruptedException {",
+          "    final Lane lane = new Lane_GeneratedSubclass();",
+          "    final List<String> reported = new CopyOnWriteArrayList<>();",
+          "    final Lane_GeneratedPipeline pipeline = new Lane_GeneratedPipeline(lane, r -> {",
+          "      final Thread thread = new Thread(r);",
+          "      thread.setUncaughtExceptionHandler((t, e) -> reported.add(e.getMessage()));",
+          "      return thread;",
+          "    });",
+          "    try (pipeline) {",
+          "      for (String s : new String[] {\"x1\", \"bad\", \"x2\", \"x3\"}) {",
+          "        pipeline.publish(s);",
+          "      }",
+          "      pipeline.publish(new StringBuilder(\"none\"));",
+          "    }",
+          "    return lane.seen + \" \" + reported + \" \" + pipeline.pipeline().failures();",
+          "  }",
+          "}");
+
+  @Test
+  void goesOnWithTheBatchAfterAFailingElement() throws Exception {
+    final Compilation compilation = Compilation.compile(List.of("-Xlint:all", "-Werror"), LANE);
+    assertEquals("[x1, x2, x3] [bad] 1", compilation.call("demo.Lane", "run"));
+  }
+
+  @Test
+  void startsDaemonConsumersByDefault() {
+    final String generated = Compilation.compile(LANE).generated("demo.Lane_GeneratedPipeline");
+    assertTrue(
+        generated.contains(
+            "tilt.apt.dispatch.runtime.CasePipeline.daemonThreads(\"Lane_GeneratedPipeline\")"),
+        generated);
+    assertFalse(generated.contains("throws InterruptedException {\n    pipeline.close()"));
+  }
+}
@@ -0,0 +1,71 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class GeneratedSubclassTest {
+  @Test
+  void sharesAnInstanceThroughTheGeneratedSuperclass() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public abstract class Shared extends Shared_GeneratedSuperclass<Object> {",
+                "  public abstract String name(@Switch Object o);",
+                "  String string(@Case String s) { return \"s\"; }",
+                "  String other(@Case Object o) { return \"o\"; }",
+                "  public static boolean run() {",
+                "    return instance() == instance() && instance().name(\"\").equals(\"s\");",
+                "  }",
+                "}"));
+    assertEquals(true, compilation.call("demo.Shared", "run"));
+    assertTrue(
+        compilation
+            .generated("demo.Shared_GeneratedSubclass")
+            .contains("static final demo.Shared INSTANCE = new Shared_GeneratedSubclass();"));
+  }
+
+  @Test
+  void omitsTheInstanceWithoutAGeneratedSuperclass() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public abstract class Plain {",
+                "  public abstract String name(@Switch Object o);",
+                "  String string(@Case String s) { return \"s\"; }",
+                "  String other(@Case Object o) { return \"o\"; }",
+                "  public static String run() {",
+                "    return new Plain_GeneratedSubclass().name(1);",
+                "  }",
+                "}"));
+    assertEquals("o", compilation.call("demo.Plain", "run"));
+    assertFalse(compilation.generated("demo.Plain_GeneratedSubclass").contains("INSTANCE"));
+  }
+
+  @Test
+  void rejectsASharedInstanceWithoutAGeneratedSuperclass() {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public abstract class Plain {",
+                "  public abstract String name(",
+                "      @Switch(singleton = Switch.Singleton.ALWAYS) Object o);",
+                "  String other(@Case Object o) { return \"o\"; }",
+                "}"));
+    assertEquals(
+        List.of("Shared instance requires a class extending Plain_GeneratedSuperclass"),
+        compilation.errors());
+  }
+}
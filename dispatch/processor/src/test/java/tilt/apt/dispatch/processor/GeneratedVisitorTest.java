@@ -0,0 +1,50 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GeneratedVisitorTest {
+  @Test
+  void reachesEachCaseThroughAcceptAndVisit() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "public abstract class Area extends Area_GeneratedSuperclass<Object> {",
+                "  static final StringBuilder LOG = new StringBuilder();",
+                "  public interface Fig { String accept(Area_GeneratedVisitor v, int n); }",
+                "  public static final class Sq implements Fig {",
+                "    public String accept(Area_GeneratedVisitor v, int n) {",
+                "      LOG.append(\"S\");",
+                "      return v.visitSq(this, n);",
+                "    }",
+                "  }",
+                "  public static final class Ci implements Fig {",
+                "    public String accept(Area_GeneratedVisitor v, int n) {",
+                "      LOG.append(\"C\");",
+                "      return v.visitCi(this, n);",
+                "    }",
+                "  }",
+                "  public abstract String area(",
+                "      @Switch(strategy = Switch.Strategy.VISITOR) Fig f, int n);",
+                "  String sq(@Case Sq s, int n) { return \"s\" + n; }",
+                "  String ci(@Case Ci c, int n) { return \"c\" + n; }",
+                "  public static String run() {",
+                "    final String result = instance().area(new Sq(), 1) + instance().area(new Ci(), 2);",
+                "    return result + \" \" + LOG;",
+                "  }",
+                "}"));
+    assertEquals("s1c2 SC", compilation.call("demo.Area", "run"));
+    final String subclass = compilation.generated("demo.Area_GeneratedSubclass");
+    assertTrue(subclass.contains("implements Area_GeneratedVisitor"), subclass);
+    assertTrue(subclass.contains("return f.accept(this, n);"), subclass);
+    assertTrue(
+        compilation
+            .generated("demo.Area_GeneratedVisitor")
+            .contains("java.lang.String visitCi(demo.Area.Ci f, int n);"));
+  }
+}
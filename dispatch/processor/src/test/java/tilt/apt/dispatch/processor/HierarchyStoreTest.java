@@ -0,0 +1,108 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HierarchyStoreTest {
+  @TempDir Path cacheDir;
+
+  /** A library whose classes are either a deep chain or all direct subclasses of L0. */
+  private static String chain(final boolean deep) {
+    final StringBuilder source = new StringBuilder("package lib;\npublic class Chain {\n");
+    source.append("  public static class L0 {}\n");
+    for (int i = 1; i < 10; i++) {
+      source.append(
+          String.format("  public static class L%d extends L%d {}\n", i, deep ? i - 1 : 0));
+    }
+    return source.append("}\n").toString();
+  }
+
+  private static final String WALK =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "import lib.Chain.*;",
+          "public class Walk {",
+          "  static String name(@Switch Object o) { return Walk_GeneratedDispatcher.name(o); }",
+          "  static String l9(@Case L9 l) { return \"9\"; }",
+          "  static String l8(@Case L8 l) { return \"8\"; }",
+          "  static String l7(@Case L7 l) { return \"7\"; }",
+          "  static String l6(@Case L6 l) { return \"6\"; }",
+          "}");
+
+  private List<String> options() {
+    return List.of("-Adebug", "-Adispatch.cacheDir=" + cacheDir.resolve("cache"));
+  }
+
+  private static void assertNote(final Compilation compilation, final String prefix) {
+    assertTrue(
+        compilation.notes().stream().anyMatch(it -> it.startsWith(prefix)),
+        compilation.notes().toString());
+  }
+
+  @Test
+  void storesTheSupertypesOfLibraryCasesInANewDirectory() {
+    final Compilation compilation =
+        Compilation.compile(chain(true)).compileAgainst(options(), WALK);
+    assertNote(
+        compilation, "demo.Walk strategy: CLASS_VALUE (4 cases, 0 interfaces, 0 final, depth 10");
+    assertNote(compilation, "hierarchy store: 4 entries, 0 reused, 4 stored");
+    assertTrue(Files.exists(cacheDir.resolve("cache").resolve(HierarchyStore.FILE_NAME)));
+  }
+
+  @Test
+  void reusesTheEntriesInAnIncrementalCompile() {
+    final Compilation compilation =
+        Compilation.compile(chain(true)).compileAgainst(options(), WALK).recompile(options(), WALK);
+    assertNote(
+        compilation, "demo.Walk strategy: CLASS_VALUE (4 cases, 0 interfaces, 0 final, depth 10");
+    assertNote(compilation, "hierarchy store: 4 entries, 4 reused, 0 stored");
+  }
+
+  @Test
+  void walksTheHierarchyAgainWhenASupertypeChanges() {
+    Compilation.compile(chain(true)).compileAgainst(options(), WALK);
+    final Compilation compilation =
+        Compilation.compile(chain(false)).compileAgainst(options(), WALK);
+    assertNote(
+        compilation, "demo.Walk strategy: INSTANCEOF (4 cases, 0 interfaces, 0 final, depth 2");
+    assertNote(compilation, "hierarchy store: 4 entries, 0 reused, 4 stored");
+    final String generated = compilation.generated("demo.Walk_GeneratedDispatcher");
+    assertTrue(generated.contains("if (o instanceof lib.Chain.L9) {"), generated);
+  }
+
+  @Test
+  void rebuildsACorruptFile() throws Exception {
+    final Path file =
+        Files.createDirectories(cacheDir.resolve("cache")).resolve(HierarchyStore.FILE_NAME);
+    Files.writeString(file, "lib.Chain.L9\tnot a depth\n");
+    final Compilation compilation =
+        Compilation.compile(chain(true)).compileAgainst(options(), WALK);
+    assertEquals(List.of(), compilation.warnings());
+    assertNote(
+        compilation, "demo.Walk strategy: CLASS_VALUE (4 cases, 0 interfaces, 0 final, depth 10");
+    assertNote(compilation, "hierarchy store: 4 entries, 0 reused, 4 stored");
+    assertEquals(HierarchyStore.HEADER, Files.readAllLines(file).get(0));
+  }
+
+  @Test
+  void dropsAnEntryWithAMalformedDepth() throws Exception {
+    final Compilation library = Compilation.compile(chain(true));
+    library.compileAgainst(options(), WALK);
+    final Path file = cacheDir.resolve("cache").resolve(HierarchyStore.FILE_NAME);
+    final List<String> lines = Files.readAllLines(file);
+    lines.set(1, lines.get(1).replaceFirst("\t[0-9]+\t", "\tten\t"));
+    Files.write(file, lines);
+    final Compilation compilation = library.compileAgainst(options(), WALK);
+    assertNote(
+        compilation, "demo.Walk strategy: CLASS_VALUE (4 cases, 0 interfaces, 0 final, depth 10");
+    assertNote(compilation, "hierarchy store: 4 entries, 3 reused, 1 stored");
+  }
+}
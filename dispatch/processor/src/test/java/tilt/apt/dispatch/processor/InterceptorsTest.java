@@ -0,0 +1,98 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class InterceptorsTest {
+  private static String interceptor(final String name) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "public class " + name + " {",
+        "  static void before(Object o) {",
+        "    Names.log.append(\"" + name + ".before \");",
+        "    if (o instanceof Long) {",
+        "      throw new IllegalArgumentException(\"" + name + "\");",
+        "    }",
+        "  }",
+        "  static void after(Object o, String result) {",
+        "    Names.log.append(\"" + name + ".after(\" + result + \") \");",
+        "  }",
+        "  static void onError(Object o, Throwable e) {",
+        "    Names.log.append(\"" + name + ".onError(\" + e.getMessage() + \") \");",
+        "  }",
+        "}");
+  }
+
+  private static final String NAMES =
+      String.join(
+          "\n",
+          "package demo;",
+          "import tilt.apt.dispatch.annotations.*;",
+          "public class Names {",
+          "  static final StringBuilder log = new StringBuilder();",
+          "  static String name(@Switch(interceptors = {First.class, Second.class}) Object o) {",
+          "    return Names_GeneratedDispatcher.name(o);",
+          "  }",
+          "  static String string(@Case String s) {",
+          "    log.append(\"case \");",
+          "    return \"s\";",
+          "  }",
+          "  static String number(@Case Number n) {",
+          "    log.append(\"case \");",
+          "    throw new IllegalStateException(\"n\");",
+          "  }",
+          "  static String call(Object o) {",
+          "    log.setLength(0);",
+          "    try {",
+          "      name(o);",
+          "    } catch (RuntimeException e) {",
+          "      log.append(\"threw \" + e.getMessage());",
+          "    }",
+          "    return log.toString().trim();",
+          "  }",
+          "  public static String string() { return call(\"\"); }",
+          "  public static String integer() { return call(1); }",
+          "  public static String longer() { return call(1L); }",
+          "}");
+
+  private static Compilation compile() {
+    final Compilation compilation =
+        Compilation.compile(interceptor("First"), interceptor("Second"), NAMES);
+    assertTrue(compilation.isSuccess(), compilation.errors().toString());
+    return compilation;
+  }
+
+  @Test
+  void callsTheHooksAroundTheCaseInOrder() throws Exception {
+    assertEquals(
+        "First.before Second.before case Second.after(s) First.after(s)",
+        compile().call("demo.Names", "string"));
+  }
+
+  @Test
+  void callsTheErrorHooksInReverseOrderAndRethrows() throws Exception {
+    assertEquals(
+        "First.before Second.before case Second.onError(n) First.onError(n) threw n",
+        compile().call("demo.Names", "integer"));
+  }
+
+  @Test
+  void skipsTheCaseWhenABeforeHookThrows() throws Exception {
+    assertEquals("First.before threw First", compile().call("demo.Names", "longer"));
+  }
+
+  @Test
+  void ignoresAHookThatDeclaresACheckedException() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            interceptor("First").replace("(Object o) {", "(Object o) throws Exception {"),
+            interceptor("Second"),
+            NAMES);
+    assertEquals(
+        "Second.before case Second.after(s) First.after(s)",
+        compilation.call("demo.Names", "string"));
+  }
+}
@@ -0,0 +1,34 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class LimitedCasesTest {
+  @Test
+  void sharesThePermitsAcrossInstances() throws Exception {
+    final Compilation compilation =
+        Compilation.compile(
+            String.join(
+                "\n",
+                "package demo;",
+                "import tilt.apt.dispatch.annotations.*;",
+                "import tilt.apt.dispatch.runtime.CaseLimited;",
+                "public abstract class Gate {",
+                "  Gate inner;",
+                "  public abstract String call(@Switch Object o);",
+                "  String string(",
+                "      @Case(limit = 1, overflow = Case.Overflow.FALLBACK, fallback = \"busy\") String s) {",
+                "    return inner == null ? \"s\" : inner.call(s);",
+                "  }",
+                "  String other(@Case Object o) { return \"o\"; }",
+                "  String busy(String s) { return \"busy\"; }",
+                "  public static String run() {",
+                "    final Gate outer = new Gate_GeneratedSubclass();",
+                "    outer.inner = new Gate_GeneratedSubclass();",
+                "    return outer.call(\"s\") + \" \" + ((CaseLimited) outer).caseLimits();",
+                "  }",
+                "}"));
+    assertEquals("busy [string(String) 0/1, 1 shed]", compilation.call("demo.Gate", "run"));
+  }
+}
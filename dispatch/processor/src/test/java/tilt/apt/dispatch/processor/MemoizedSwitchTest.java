@@ -0,0 +1,52 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class MemoizedSwitchTest {
+  private static String source(final String memoize) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "import tilt.apt.dispatch.runtime.Memoized;",
+        "public abstract class Sizes {",
+        "  int calls;",
+        "  " + memoize + " public abstract String size(@Switch Object o);",
+        "  String string(@Case String s) { calls++; return s + s.length(); }",
+        "  String other(@Case Object o) { calls++; return \"?\"; }",
+        "  public static String run() {",
+        "    final Sizes sizes = new Sizes_GeneratedSubclass();",
+        "    final Memoized memoized = (Memoized) sizes;",
+        "    String result = \"\";",
+        "    for (final Object o : new Object[] {\"a\", \"bb\", \"a\", 1, \"ccc\", \"a\", 2}) {",
+        "      result += sizes.size(o);",
+        "    }",
+        "    return result + \" \" + sizes.calls + \" \" + memoized.hitCount() + \"/\"",
+        "        + memoized.missCount() + \" \" + memoized.cacheSize();",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void callsEachCaseOncePerArgument() throws Exception {
+    assertEquals(
+        "a1bb2a1?ccc3a1? 5 2/5 5",
+        Compilation.compile(source("@Memoize")).call("demo.Sizes", "run"));
+  }
+
+  @Test
+  void evictsEveryResultWhenFull() throws Exception {
+    assertEquals(
+        "a1bb2a1?ccc3a1? 6 1/6 2",
+        Compilation.compile(source("@Memoize(maximumSize = 2)")).call("demo.Sizes", "run"));
+  }
+
+  @Test
+  void cachesByClass() throws Exception {
+    assertEquals(
+        "a1a1a1?a1a1? 2 5/2 2",
+        Compilation.compile(source("@Memoize(key = Memoize.Key.CLASS)")).call("demo.Sizes", "run"));
+  }
+}
@@ -0,0 +1,50 @@
+package tilt.apt.dispatch.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class WarmUpTest {
+  private static String counter(final String strategy) {
+    return String.join(
+        "\n",
+        "package demo;",
+        "import tilt.apt.dispatch.annotations.*;",
+        "public abstract class Counter extends Counter_GeneratedSuperclass<Object> {",
+        "  int strings;",
+        "  int others;",
+        "  public abstract void count(",
+        "      @Switch(warmUp = true, strategy = Switch.Strategy." + strategy + ") Object o);",
+        "  void string(@Case String s) { strings++; }",
+        "  void other(@Case Object o) { others++; }",
+        "  public static String run() {",
+        "    warmUp();",
+        "    final Counter counter = newInstance();",
+        "    warmUp(counter, java.util.List.of(\"a\", 1, 2L), 5);",
+        "    return counter.strings + \" \" + counter.others;",
+        "  }",
+        "}");
+  }
+
+  @Test
+  void callsTheSwitchWithEachSampleForEachIteration() throws Exception {
+    final Compilation compilation = Compilation.compile(counter("INSTANCEOF"));
+    assertEquals("5 10", compilation.call("demo.Counter", "run"));
+    final String generated = compilation.generated("demo.Counter_GeneratedSubclass");
+    assertTrue(
+        generated.contains(
+            "final Class<?>[] types = {java.lang.String.class, java.lang.Object.class};"),
+        generated);
+    assertFalse(generated.contains(".get(type)"), generated);
+  }
+
+  @Test
+  void fillsTheClassValueOfTheCaseTypes() throws Exception {
+    final Compilation compilation = Compilation.compile(counter("CLASS_VALUE"));
+    assertEquals("5 10", compilation.call("demo.Counter", "run"));
+    final String generated = compilation.generated("demo.Counter_GeneratedSubclass");
+    assertTrue(generated.contains("for (final Class<?> type : types) {"), generated);
+  }
+}
@@ -0,0 +1,9 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.List;
+
+/** Implemented by generated subclasses of a switch with a coalescing {@code @Case}. */
+public interface CaseCoalesced {
+  /** Returns the coalescers of the coalescing cases, in the order of the cases. */
+  List<Coalescer> coalescers();
+}
@@ -0,0 +1,10 @@
+package tilt.apt.dispatch.runtime;
+
+/**
+ * Implemented by the generated {@code _GeneratedExtension} interface of an extensible switch, whose
+ * implementations handle a type that has no @Case.
+ */
+public interface CaseExtension {
+  /** Returns the type of the arguments handled, including its subtypes. */
+  Class<?> caseType();
+}
@@ -0,0 +1,89 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The extensions of an extensible switch, consulted for an argument that no @Case takes.
+ *
+ * <p>Lookups read a volatile snapshot without locking and cache the extension found for each class
+ * in a {@link ClassValue}. Registering copies the snapshot, so it is meant for startup. The
+ * extensions are ordered from the most to the least specific type, so that an argument finds the
+ * extension of its nearest supertype, and a later extension of the same type replaces an earlier
+ * one.
+ *
+ * @param <E> the generated extension interface
+ */
+public final class CaseExtensions<E extends CaseExtension> {
+  private static final Object NONE = new Object();
+
+  private volatile Snapshot snapshot = new Snapshot(new CaseExtension[0]);
+
+  /**
+   * Returns the extensions registered, starting with those found by a {@link
+   * java.util.ServiceLoader}.
+   */
+  public static <E extends CaseExtension> CaseExtensions<E> load(final Iterable<E> services) {
+    final CaseExtensions<E> extensions = new CaseExtensions<>();
+    for (final E extension : services) {
+      extensions.register(extension);
+    }
+    return extensions;
+  }
+
+  /** Adds an extension, replacing the one registered for the same type. */
+  public synchronized void register(final E extension) {
+    final Class<?> type = Objects.requireNonNull(extension.caseType(), "caseType");
+    final List<CaseExtension> extensions = new ArrayList<>(Arrays.asList(snapshot.extensions));
+    extensions.removeIf(it -> it.caseType() == type);
+    int at = extensions.size();
+    for (int i = 0; i < extensions.size(); i++) {
+      if (extensions.get(i).caseType().isAssignableFrom(type)) {
+        at = i;
+        break;
+      }
+    }
+    extensions.add(at, extension);
+    snapshot = new Snapshot(extensions.toArray(new CaseExtension[0]));
+  }
+
+  /** Returns the extension for a class, or null if there is none. */
+  @SuppressWarnings("unchecked")
+  public E find(final Class<?> type) {
+    final Snapshot current = snapshot;
+    if (current.extensions.length == 0) {
+      return null;
+    }
+    final Object extension = current.cache.get(type);
+    return extension == NONE ? null : (E) extension;
+  }
+
+  /** Returns the extensions from the most to the least specific type. */
+  @SuppressWarnings("unchecked")
+  public List<E> list() {
+    return Collections.unmodifiableList(Arrays.asList((E[]) snapshot.extensions));
+  }
+
+  private static final class Snapshot {
+    final CaseExtension[] extensions;
+    final ClassValue<Object> cache =
+        new ClassValue<Object>() {
+          @Override
+          protected Object computeValue(final Class<?> type) {
+            for (final CaseExtension extension : extensions) {
+              if (extension.caseType().isAssignableFrom(type)) {
+                return extension;
+              }
+            }
+            return NONE;
+          }
+        };
+
+    Snapshot(final CaseExtension[] extensions) {
+      this.extensions = extensions;
+    }
+  }
+}
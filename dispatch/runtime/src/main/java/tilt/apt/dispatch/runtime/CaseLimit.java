@@ -0,0 +1,66 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The permits of a {@code @Case} with a limit. A permit is taken with a compare-and-set that never
+ * waits, so that a call over the limit is shed at once, and every shed call is counted.
+ */
+public final class CaseLimit {
+  private final String name;
+  private final int limit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder shed = new LongAdder();
+
+  public CaseLimit(final String name, final int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive: " + limit);
+    }
+    this.name = name;
+    this.limit = limit;
+  }
+
+  /** Takes a permit unless the limit is reached, in which case the call is counted as shed. */
+  public boolean tryAcquire() {
+    while (true) {
+      final int current = inFlight.get();
+      if (current >= limit) {
+        shed.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns a permit taken by {@link #tryAcquire()}. */
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /** Returns the case, as its method and the type of its @Case parameter. */
+  public String name() {
+    return name;
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  /** Returns the number of calls of the case that run now. */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /** Returns the number of calls over the limit. */
+  public long shedCount() {
+    return shed.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %d/%d, %d shed", name, inFlight(), limit, shedCount());
+  }
+}
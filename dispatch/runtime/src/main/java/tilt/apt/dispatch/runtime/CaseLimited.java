@@ -0,0 +1,12 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.List;
+
+/** Implemented by generated subclasses of a switch with a {@code @Case} that has a limit. */
+public interface CaseLimited {
+  /**
+   * Returns the limits of the cases that have one, in the order of the cases, shared by every
+   * instance of the class.
+   */
+  List<CaseLimit> caseLimits();
+}
@@ -0,0 +1,253 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs the consumers of a generated {@code _GeneratedPipeline}: one {@link RingBuffer} per case and
+ * stripe, and one consumer thread per stripe that drains the buffers of its stripe in batches.
+ *
+ * <p>Elements of a case published under the same stripe are consumed in the order they were
+ * published. An idle consumer spins briefly and then parks for up to {@link #MAX_PARK_NANOS}, so
+ * that an idle pipeline costs little CPU at the price of some latency for the next element.
+ */
+public final class CasePipeline implements AutoCloseable {
+  public static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final int IDLE_SPINS = 100;
+
+  /**
+   * Calls the case of the given index for each element of the batch, passing what the case throws
+   * for an element to the failure consumer and going on with the next element.
+   */
+  @FunctionalInterface
+  public interface Drain {
+    void drain(int caseIndex, Object[] batch, int count, Consumer<Throwable> failed);
+  }
+
+  private final RingBuffer<Object>[] buffers;
+  private final int cases;
+  private final int stripes;
+  private final int batchSize;
+  private final Drain drain;
+  private final List<Thread> consumers;
+  private final AtomicLong failures = new AtomicLong();
+  private final Consumer<Throwable> failed = this::fail;
+  private volatile boolean closed;
+
+  @SuppressWarnings("unchecked")
+  public CasePipeline(
+      final int cases,
+      final int stripes,
+      final int capacity,
+      final int batchSize,
+      final Drain drain,
+      final ThreadFactory threads) {
+    if (cases <= 0 || stripes <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Cases, stripes and batch size must be positive: %d, %d, %d",
+              cases, stripes, batchSize));
+    }
+    this.buffers = (RingBuffer<Object>[]) new RingBuffer<?>[cases * stripes];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new RingBuffer<>(capacity);
+    }
+    this.cases = cases;
+    this.stripes = stripes;
+    this.batchSize = batchSize;
+    this.drain = drain;
+    this.consumers = new ArrayList<>(stripes);
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      final int consumerStripe = stripe;
+      final Thread consumer = threads.newThread(() -> consume(consumerStripe));
+      consumers.add(consumer);
+    }
+    consumers.forEach(Thread::start);
+  }
+
+  /**
+   * Adds an element for a case to the stripe of the hash of its key, unless the buffer is full.
+   *
+   * @throws IllegalStateException if the pipeline is closed
+   */
+  public boolean offer(final int caseIndex, final int keyHash, final Object element) {
+    if (closed) {
+      throw new IllegalStateException("Pipeline is closed");
+    }
+    return buffers[caseIndex * stripes + stripe(keyHash)].offer(element);
+  }
+
+  /** Adds an element for a case to the stripe of the calling thread, unless the buffer is full. */
+  public boolean offer(final int caseIndex, final Object element) {
+    return offer(caseIndex, System.identityHashCode(Thread.currentThread()), element);
+  }
+
+  /** Adds an element for a case to the stripe of the hash of its key, waiting for room. */
+  public void put(final int caseIndex, final int keyHash, final Object element)
+      throws InterruptedException {
+    int spins = 0;
+    while (offer(caseIndex, keyHash, element) == false) {
+      spins = idle(spins);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /** Adds an element for a case to the stripe of the calling thread, waiting for room. */
+  public void put(final int caseIndex, final Object element) throws InterruptedException {
+    put(caseIndex, System.identityHashCode(Thread.currentThread()), element);
+  }
+
+  /** Returns the number of elements of a case waiting in its buffers. */
+  public int depth(final int caseIndex) {
+    int depth = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      depth += buffers[caseIndex * stripes + stripe].depth();
+    }
+    return depth;
+  }
+
+  /** Returns the number of elements of a case drained into it. */
+  public long drained(final int caseIndex) {
+    long drained = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      drained += buffers[caseIndex * stripes + stripe].drained();
+    }
+    return drained;
+  }
+
+  /** Returns the number of elements of a case refused because its buffer was full. */
+  public long rejected(final int caseIndex) {
+    long rejected = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      rejected += buffers[caseIndex * stripes + stripe].rejected();
+    }
+    return rejected;
+  }
+
+  /**
+   * Returns the number of elements whose case threw, each exception passed to the uncaught handler
+   * of the consumer.
+   */
+  public long failures() {
+    return failures.get();
+  }
+
+  public int cases() {
+    return cases;
+  }
+
+  public int stripes() {
+    return stripes;
+  }
+
+  /**
+   * Refuses further elements, lets the consumers drain what was published and waits for them. If
+   * the calling thread is interrupted, it still waits and keeps its interrupt status.
+   *
+   * <p>Stop the publishers first: an element offered while closing is either refused, or accepted
+   * after its consumer has finished and then never consumed.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    boolean interrupted = false;
+    for (final Thread consumer : consumers) {
+      LockSupport.unpark(consumer);
+      while (consumer.isAlive()) {
+        try {
+          consumer.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns a factory of daemon threads named after the pipeline, so that a pipeline that is not
+   * closed does not keep the JVM alive.
+   */
+  public static ThreadFactory daemonThreads(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private int stripe(final int keyHash) {
+    return Math.floorMod(keyHash ^ (keyHash >>> 16), stripes);
+  }
+
+  private void consume(final int stripe) {
+    final Object[] batch = new Object[batchSize];
+    int spins = 0;
+    while (true) {
+      final boolean wasClosed = closed;
+      boolean drained = false;
+      for (int caseIndex = 0; caseIndex < cases; caseIndex++) {
+        final int count = buffers[caseIndex * stripes + stripe].drainTo(batch);
+        if (count > 0) {
+          drained = true;
+          drain(caseIndex, batch, count);
+        }
+      }
+      if (drained) {
+        spins = 0;
+      } else if (wasClosed && isEmpty(stripe)) {
+        return;
+      } else {
+        spins = idle(spins);
+      }
+    }
+  }
+
+  private boolean isEmpty(final int stripe) {
+    for (int caseIndex = 0; caseIndex < cases; caseIndex++) {
+      if (buffers[caseIndex * stripes + stripe].depth() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void drain(final int caseIndex, final Object[] batch, final int count) {
+    try {
+      drain.drain(caseIndex, batch, count, failed);
+    } catch (final Throwable e) {
+      // The drain itself failed, so none of the batch is known to be consumed
+      failures.addAndGet(count - 1);
+      fail(e);
+    } finally {
+      Arrays.fill(batch, 0, count, null);
+    }
+  }
+
+  private void fail(final Throwable e) {
+    failures.incrementAndGet();
+    final Thread thread = Thread.currentThread();
+    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+  }
+
+  private static int idle(final int spins) {
+    if (spins < IDLE_SPINS) {
+      Thread.onSpinWait();
+    } else {
+      LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, spins - IDLE_SPINS)));
+    }
+    return spins + 1;
+  }
+}
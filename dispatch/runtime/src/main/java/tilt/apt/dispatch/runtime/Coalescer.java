@@ -0,0 +1,132 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses the pending calls of a coalescing {@code @Case} by key. A submitted argument replaces a
+ * pending one with the same key, and the pending arguments are passed to the case once the window
+ * of the first one ends, or at once by the submitting thread when the pending map is full, so that
+ * the map stays bounded. The windows of every coalescer are timed by the {@link DispatchTimer},
+ * which hands the pending arguments of an ended window to the executor of the coalescer.
+ */
+public final class Coalescer {
+  private static final Object NULL_KEY = new Object();
+
+  /** Calls the case for an argument. */
+  @FunctionalInterface
+  public interface Sink {
+    void accept(Object argument) throws Exception;
+  }
+
+  private final String name;
+  private final long windowNanos;
+  private final int maxPending;
+  private final Sink sink;
+  private final Executor executor;
+  private final ConcurrentHashMap<Object, Object> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  /** Creates a coalescer that passes the arguments of an ended window on the common pool. */
+  public Coalescer(
+      final String name, final long windowMillis, final int maxPending, final Sink sink) {
+    this(name, windowMillis, maxPending, sink, ForkJoinPool.commonPool());
+  }
+
+  /** Creates a coalescer that passes the arguments of an ended window on the executor. */
+  public Coalescer(
+      final String name,
+      final long windowMillis,
+      final int maxPending,
+      final Sink sink,
+      final Executor executor) {
+    if (windowMillis <= 0 || maxPending <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Window and pending size must be positive: %d, %d", windowMillis, maxPending));
+    }
+    this.name = name;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxPending = maxPending;
+    this.sink = sink;
+    this.executor = executor;
+  }
+
+  /** Adds an argument to be passed to the case, replacing the pending one with the same key. */
+  public void submit(final Object key, final Object argument) {
+    submitted.increment();
+    if (pending.put(key == null ? NULL_KEY : key, argument) != null) {
+      coalesced.increment();
+      return;
+    }
+    if (pending.size() >= maxPending) {
+      flush();
+    } else if (scheduled.compareAndSet(false, true)) {
+      DispatchTimer.schedule(this::flushScheduled, windowNanos, TimeUnit.NANOSECONDS, executor);
+    }
+  }
+
+  /**
+   * Passes every pending argument to the case on the calling thread. A failing case is counted and
+   * reported to the uncaught exception handler of the thread, and the other arguments still pass.
+   */
+  public void flush() {
+    for (final Object key : pending.keySet()) {
+      final Object argument = pending.remove(key);
+      if (argument == null) {
+        continue;
+      }
+      try {
+        sink.accept(argument);
+      } catch (Throwable e) {
+        failures.increment();
+        final Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+      }
+    }
+  }
+
+  private void flushScheduled() {
+    scheduled.set(false);
+    flush();
+  }
+
+  /** Returns the case, as its method and the type of its @Case parameter. */
+  public String name() {
+    return name;
+  }
+
+  /** Returns the number of keys waiting for the end of their window. */
+  public int pending() {
+    return pending.size();
+  }
+
+  /** Returns the number of submitted arguments. */
+  public long submittedCount() {
+    return submitted.sum();
+  }
+
+  /** Returns the number of submitted arguments that replaced a pending one. */
+  public long coalescedCount() {
+    return coalesced.sum();
+  }
+
+  /** Returns the number of calls of the case that threw. */
+  public long failureCount() {
+    return failures.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s %d pending, %d submitted, %d coalesced, %d failed",
+        name, pending(), submittedCount(), coalescedCount(), failureCount());
+  }
+}
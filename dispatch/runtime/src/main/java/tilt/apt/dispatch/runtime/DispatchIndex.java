@@ -0,0 +1,141 @@
+package tilt.apt.dispatch.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Reads the dispatcher index written by the dispatch processor, so that dispatchers can be
+ * discovered without scanning the classpath.
+ *
+ * <p>Every jar or output directory compiled with the processor contributes one {@link #RESOURCE}.
+ * The first line holds the format version, each following line describes one annotated class as tab
+ * separated columns: the annotated class, its generated subclass (or static dispatcher for a
+ * static @Switch method), its factory methods and its case types, the last two being space
+ * separated lists.
+ */
+public final class DispatchIndex {
+  public static final String RESOURCE = "META-INF/tilt-dispatch/index";
+  public static final int VERSION = 1;
+  public static final String HEADER = "# tilt-dispatch index ";
+
+  private static final class DefaultHolder {
+    static final List<Entry> ENTRIES = load(DispatchIndex.class.getClassLoader());
+  }
+
+  public static final class Entry {
+    private final String annotatedClassName;
+    private final String generatedSubclassName;
+    private final List<String> factoryMethods;
+    private final List<String> caseTypeNames;
+
+    Entry(
+        final String annotatedClassName,
+        final String generatedSubclassName,
+        final List<String> factoryMethods,
+        final List<String> caseTypeNames) {
+      this.annotatedClassName = annotatedClassName;
+      this.generatedSubclassName = generatedSubclassName;
+      this.factoryMethods = factoryMethods;
+      this.caseTypeNames = caseTypeNames;
+    }
+
+    /** Returns the binary name of the class with the @Switch. */
+    public String getAnnotatedClassName() {
+      return annotatedClassName;
+    }
+
+    /** Returns the binary name of the generated subclass or static dispatcher. */
+    public String getGeneratedSubclassName() {
+      return generatedSubclassName;
+    }
+
+    /**
+     * Returns the static factory methods of the annotated class, e.g. {@code
+     * newInstance(java.lang.String)}.
+     */
+    public List<String> getFactoryMethods() {
+      return factoryMethods;
+    }
+
+    /** Returns the binary names of the case types, in the order they are tried. */
+    public List<String> getCaseTypeNames() {
+      return caseTypeNames;
+    }
+
+    /** Loads the annotated class without initializing it. */
+    public Class<?> loadAnnotatedClass(final ClassLoader loader) throws ClassNotFoundException {
+      return Class.forName(annotatedClassName, false, loader);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s => %s %s %s",
+          annotatedClassName, generatedSubclassName, factoryMethods, caseTypeNames);
+    }
+  }
+
+  private DispatchIndex() {}
+
+  /**
+   * Returns the entries visible to the class loader of this class. The index resources are read on
+   * the first call only.
+   */
+  public static List<Entry> entries() {
+    return DefaultHolder.ENTRIES;
+  }
+
+  /** Reads every index resource visible to the given class loader. */
+  public static List<Entry> load(final ClassLoader loader) {
+    final List<Entry> entries = new ArrayList<>();
+    try {
+      final Enumeration<URL> resources = loader.getResources(RESOURCE);
+      while (resources.hasMoreElements()) {
+        read(resources.nextElement(), entries);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  private static void read(final URL resource, final List<Entry> entries) throws IOException {
+    try (final BufferedReader reader =
+        new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+      final String header = reader.readLine();
+      if (header == null) {
+        return;
+      }
+      if (header.equals(HEADER + VERSION) == false) {
+        throw new IllegalStateException(
+            String.format("Unsupported dispatch index %s: %s", resource, header));
+      }
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.isBlank()) {
+          continue;
+        }
+        final String[] columns = line.split("\t", -1);
+        if (columns.length != 4) {
+          throw new IllegalStateException(
+              String.format("Malformed dispatch index %s: %s", resource, line));
+        }
+        entries.add(new Entry(columns[0], columns[1], split(columns[2]), split(columns[3])));
+      }
+    }
+  }
+
+  private static List<String> split(final String column) {
+    if (column.isEmpty()) {
+      return List.of();
+    }
+    return List.of(column.split(" "));
+  }
+}
@@ -0,0 +1,43 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the delayed tasks of the generated code and of the {@link Coalescer}s on one shared daemon
+ * thread. A task should be short, since it delays every task due after it, so a task that calls
+ * user code is handed to an executor instead.
+ */
+public final class DispatchTimer {
+  private DispatchTimer() {}
+
+  /** Runs the task once the delay has passed. */
+  public static void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+    Scheduler.INSTANCE.schedule(task, delay, unit);
+  }
+
+  /** Hands the task to the executor once the delay has passed. */
+  public static void schedule(
+      final Runnable task, final long delay, final TimeUnit unit, final Executor executor) {
+    Scheduler.INSTANCE.schedule(() -> executor.execute(task), delay, unit);
+  }
+
+  private static final class Scheduler {
+    static final ScheduledExecutorService INSTANCE = create();
+
+    private static ScheduledExecutorService create() {
+      final ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                final Thread thread = new Thread(runnable, "dispatch-timer");
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+  }
+}
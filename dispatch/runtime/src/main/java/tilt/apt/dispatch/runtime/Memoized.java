@@ -0,0 +1,16 @@
+package tilt.apt.dispatch.runtime;
+
+/** Implemented by generated subclasses of a switch with {@code @Memoize}. */
+public interface Memoized {
+  /** Returns the number of calls answered from the cache. */
+  long hitCount();
+
+  /** Returns the number of calls that dispatched to a case. */
+  long missCount();
+
+  /** Returns the number of cached results. */
+  int cacheSize();
+
+  /** Drops every cached result. */
+  void clearCache();
+}
@@ -0,0 +1,93 @@
+package tilt.apt.dispatch.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue of preallocated slots for many producers and a single consumer, without locks.
+ *
+ * <p>A producer claims a sequence by a compare-and-set of the tail and then fills its slot, which
+ * the consumer sees as soon as it is no longer null. Only the consumer moves the head, so the tail
+ * minus the head is the depth of the queue.
+ *
+ * @param <E> the type of the elements
+ */
+public final class RingBuffer<E> {
+  private final AtomicReferenceArray<E> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /** @param capacity the number of slots, a power of two */
+  public RingBuffer(final int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /** Adds an element unless the queue is full. Safe to call from any thread. */
+  public boolean offer(final E element) {
+    if (element == null) {
+      throw new NullPointerException();
+    }
+    long sequence;
+    do {
+      sequence = tail.get();
+      if (sequence - head.get() > mask) {
+        rejected.incrementAndGet();
+        return false;
+      }
+    } while (tail.compareAndSet(sequence, sequence + 1) == false);
+    slots.lazySet((int) sequence & mask, element);
+    return true;
+  }
+
+  /**
+   * Moves up to as many elements as the batch holds into it and returns their number. Must only be
+   * called by the consumer thread.
+   */
+  public int drainTo(final Object[] batch) {
+    final long from = head.get();
+    int count = 0;
+    while (count < batch.length) {
+      final int index = (int) (from + count) & mask;
+      final E element = slots.get(index);
+      if (element == null) {
+        break;
+      }
+      slots.lazySet(index, null);
+      batch[count++] = element;
+    }
+    if (count > 0) {
+      head.lazySet(from + count);
+    }
+    return count;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /** Returns the number of elements offered and not drained yet. */
+  public int depth() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  /** Returns the number of elements accepted since the queue was created. */
+  public long offered() {
+    return tail.get();
+  }
+
+  /** Returns the number of elements drained since the queue was created. */
+  public long drained() {
+    return head.get();
+  }
+
+  /** Returns the number of elements refused because the queue was full. */
+  public long rejected() {
+    return rejected.get();
+  }
+}
@@ -0,0 +1,49 @@
+package tilt.apt.dispatch.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CaseExtensionsTest {
+  static final class Extension implements CaseExtension {
+    final Class<?> type;
+
+    Extension(final Class<?> type) {
+      this.type = type;
+    }
+
+    @Override
+    public Class<?> caseType() {
+      return type;
+    }
+  }
+
+  @Test
+  void findsTheExtensionOfTheNearestSupertype() {
+    final Extension number = new Extension(Number.class);
+    final Extension integer = new Extension(Integer.class);
+    final CaseExtensions<Extension> extensions = CaseExtensions.load(List.of(number, integer));
+
+    assertSame(integer, extensions.find(Integer.class));
+    assertSame(number, extensions.find(Long.class));
+    assertNull(extensions.find(String.class));
+    assertEquals(List.of(integer, number), extensions.list());
+  }
+
+  @Test
+  void replacesTheExtensionOfTheSameType() {
+    final CaseExtensions<Extension> extensions = new CaseExtensions<>();
+    assertNull(extensions.find(Integer.class));
+    final Extension first = new Extension(Number.class);
+    extensions.register(first);
+    assertSame(first, extensions.find(Integer.class));
+
+    final Extension second = new Extension(Number.class);
+    extensions.register(second);
+    assertSame(second, extensions.find(Integer.class));
+    assertEquals(List.of(second), extensions.list());
+  }
+}
@@ -0,0 +1,29 @@
+package tilt.apt.dispatch.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CaseLimitTest {
+  @Test
+  void rejectsLimitThatIsNotPositive() {
+    assertThrows(IllegalArgumentException.class, () -> new CaseLimit("case", 0));
+  }
+
+  @Test
+  void shedsCallsOverTheLimit() {
+    final CaseLimit limit = new CaseLimit("circle(Circle)", 2);
+    assertTrue(limit.tryAcquire());
+    assertTrue(limit.tryAcquire());
+    assertFalse(limit.tryAcquire());
+    assertEquals(2, limit.inFlight());
+    assertEquals(1, limit.shedCount());
+
+    limit.release();
+    assertTrue(limit.tryAcquire());
+    assertEquals("circle(Circle) 2/2, 1 shed", limit.toString());
+  }
+}
@@ -0,0 +1,150 @@
+package tilt.apt.dispatch.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import org.junit.jupiter.api.Test;
+
+class CasePipelineTest {
+  private final List<String> consumed = Collections.synchronizedList(new ArrayList<>());
+  private final List<Throwable> reported = Collections.synchronizedList(new ArrayList<>());
+
+  private final ThreadFactory threads =
+      runnable -> {
+        final Thread thread = CasePipeline.daemonThreads("test").newThread(runnable);
+        thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+        return thread;
+      };
+
+  /** Consumes the elements of case 0, and throws for those of case 1 or named bad. */
+  private void drain(
+      final int caseIndex,
+      final Object[] batch,
+      final int count,
+      final java.util.function.Consumer<Throwable> failed) {
+    if (caseIndex == 1) {
+      throw new IllegalArgumentException("No case 1");
+    }
+    for (int i = 0; i < count; i++) {
+      try {
+        if ("bad".equals(batch[i])) {
+          throw new IllegalStateException("bad");
+        }
+        consumed.add((String) batch[i]);
+      } catch (Throwable e) {
+        failed.accept(e);
+      }
+    }
+  }
+
+  @Test
+  void rejectsSizesThatAreNotPositive() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new CasePipeline(0, 1, 4, 1, this::drain, threads));
+  }
+
+  @Test
+  void consumesEveryElementInOrderAndDrainsOnClose() throws InterruptedException {
+    final CasePipeline pipeline = new CasePipeline(2, 1, 8, 2, this::drain, threads);
+    for (int i = 0; i < 20; i++) {
+      pipeline.put(0, "x" + i);
+    }
+    pipeline.close();
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      expected.add("x" + i);
+    }
+    assertEquals(expected, consumed);
+    assertEquals(20, pipeline.drained(0));
+    assertEquals(0, pipeline.depth(0));
+    assertThrows(IllegalStateException.class, () -> pipeline.offer(0, "late"));
+  }
+
+  @Test
+  void countsEachFailedElementAndGoesOnWithTheBatch() throws InterruptedException {
+    final CasePipeline pipeline = new CasePipeline(2, 1, 8, 4, this::drain, threads);
+    for (final String element : new String[] {"x1", "bad", "x2", "x3"}) {
+      pipeline.put(0, element);
+    }
+    pipeline.close();
+    assertEquals(List.of("x1", "x2", "x3"), consumed);
+    assertEquals(1, pipeline.failures());
+    assertEquals(1, reported.size());
+  }
+
+  @Test
+  void countsTheWholeBatchWhenTheDrainFails() throws InterruptedException {
+    final CasePipeline pipeline = new CasePipeline(2, 1, 8, 4, this::drain, threads);
+    pipeline.put(1, "a");
+    pipeline.put(1, "b");
+    pipeline.close();
+    assertEquals(2, pipeline.failures());
+    assertTrue(reported.size() >= 1);
+  }
+
+  @Test
+  void refusesWhenTheBufferIsFull() throws InterruptedException {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CasePipeline pipeline =
+        new CasePipeline(
+            1,
+            1,
+            2,
+            1,
+            (caseIndex, batch, count, failed) -> {
+              blocked.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                failed.accept(e);
+              }
+            },
+            threads);
+    pipeline.put(0, "a");
+    blocked.await();
+    assertTrue(pipeline.offer(0, "b"));
+    assertTrue(pipeline.offer(0, "c"));
+    assertFalse(pipeline.offer(0, "d"));
+    assertEquals(1, pipeline.rejected(0));
+    release.countDown();
+    pipeline.close();
+    assertEquals(3, pipeline.drained(0));
+  }
+
+  @Test
+  void stripesByKeyHash() throws InterruptedException {
+    final CasePipeline pipeline = new CasePipeline(1, 4, 8, 4, this::drain, threads);
+    assertEquals(4, pipeline.stripes());
+    for (int i = 0; i < 16; i++) {
+      pipeline.put(0, i, "x" + i);
+    }
+    pipeline.close();
+    assertEquals(16, consumed.size());
+  }
+
+  @Test
+  void closeWaitsAndKeepsTheInterruptStatus() {
+    final CasePipeline pipeline = new CasePipeline(1, 2, 8, 4, this::drain, threads);
+    Thread.currentThread().interrupt();
+    pipeline.close();
+    assertTrue(Thread.interrupted());
+  }
+
+  @Test
+  void createsNamedDaemonThreads() {
+    final ThreadFactory factory = CasePipeline.daemonThreads("lane");
+    final Thread first = factory.newThread(() -> {});
+    final Thread second = factory.newThread(() -> {});
+    assertTrue(first.isDaemon());
+    assertEquals("lane-1", first.getName());
+    assertEquals("lane-2", second.getName());
+  }
+}
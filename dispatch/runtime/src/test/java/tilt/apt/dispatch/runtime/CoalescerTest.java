@@ -0,0 +1,103 @@
+package tilt.apt.dispatch.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class CoalescerTest {
+  @Test
+  void rejectsWindowThatIsNotPositive() {
+    assertThrows(IllegalArgumentException.class, () -> new Coalescer("case", 0, 1, it -> {}));
+  }
+
+  @Test
+  void passesTheLastArgumentOfEachKeyAtTheEndOfTheWindow() throws InterruptedException {
+    final ConcurrentLinkedQueue<Object> passed = new ConcurrentLinkedQueue<>();
+    final CountDownLatch flushed = new CountDownLatch(2);
+    final Coalescer coalescer =
+        new Coalescer(
+            "put(Put)",
+            20,
+            100,
+            it -> {
+              passed.add(it);
+              flushed.countDown();
+            });
+    coalescer.submit("a", "a1");
+    coalescer.submit("b", "b1");
+    coalescer.submit("a", "a2");
+    coalescer.submit(null, "n1");
+    coalescer.submit(null, "n2");
+
+    flushed.await(5, TimeUnit.SECONDS);
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (passed.size() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    final List<Object> sorted = new ArrayList<>(passed);
+    sorted.sort(null);
+    assertEquals(List.of("a2", "b1", "n2"), sorted);
+    assertEquals(5, coalescer.submittedCount());
+    assertEquals(2, coalescer.coalescedCount());
+    assertEquals(0, coalescer.pending());
+  }
+
+  @Test
+  void passesTheArgumentsOfAnEndedWindowOnTheExecutor() throws Exception {
+    final ExecutorService executor =
+        Executors.newSingleThreadExecutor(it -> new Thread(it, "coalescer-test"));
+    try {
+      final CompletableFuture<String> thread = new CompletableFuture<>();
+      final Coalescer coalescer =
+          new Coalescer(
+              "put(Put)",
+              1,
+              100,
+              it -> thread.complete(Thread.currentThread().getName()),
+              executor);
+      coalescer.submit("a", "a1");
+      assertEquals("coalescer-test", thread.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void flushesOnTheSubmittingThreadWhenFullAndCountsFailures() {
+    final List<Object> passed = new ArrayList<>();
+    final Coalescer coalescer =
+        new Coalescer(
+            "put(Put)",
+            60_000,
+            2,
+            it -> {
+              if ("bad".equals(it)) {
+                throw new IllegalStateException("bad");
+              }
+              passed.add(it);
+            });
+    final Thread thread = Thread.currentThread();
+    final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+    final List<Throwable> reported = new ArrayList<>();
+    thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+    try {
+      coalescer.submit("a", "bad");
+      coalescer.submit("b", "b1");
+    } finally {
+      thread.setUncaughtExceptionHandler(handler);
+    }
+    assertEquals(List.of("b1"), passed);
+    assertEquals(1, reported.size());
+    assertEquals(1, coalescer.failureCount());
+    assertEquals(0, coalescer.pending());
+  }
+}
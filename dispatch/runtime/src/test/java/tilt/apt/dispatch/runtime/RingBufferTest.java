@@ -0,0 +1,95 @@
+package tilt.apt.dispatch.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+  @Test
+  void rejectsCapacityThatIsNotAPowerOfTwo() {
+    assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0));
+    assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(6));
+  }
+
+  @Test
+  void drainsInOrderAndRefusesWhenFull() {
+    final RingBuffer<String> buffer = new RingBuffer<>(4);
+    for (final String element : new String[] {"a", "b", "c", "d"}) {
+      assertTrue(buffer.offer(element));
+    }
+    assertFalse(buffer.offer("e"));
+    assertEquals(4, buffer.depth());
+    assertEquals(1, buffer.rejected());
+
+    final Object[] batch = new Object[3];
+    assertEquals(3, buffer.drainTo(batch));
+    assertArrayEquals(new Object[] {"a", "b", "c"}, batch);
+    assertTrue(buffer.offer("f"));
+    assertEquals(2, buffer.drainTo(batch));
+    assertEquals("d", batch[0]);
+    assertEquals("f", batch[1]);
+    assertEquals(0, buffer.drainTo(batch));
+    assertEquals(5, buffer.offered());
+    assertEquals(5, buffer.drained());
+    assertEquals(0, buffer.depth());
+  }
+
+  @Test
+  void rejectsNull() {
+    assertThrows(NullPointerException.class, () -> new RingBuffer<>(2).offer(null));
+  }
+
+  @Test
+  void keepsTheOrderOfEachProducer() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 2_000;
+    final RingBuffer<long[]> buffer = new RingBuffer<>(64);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      final Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                  final long[] element = {producer, i};
+                  while (buffer.offer(element) == false) {
+                    Thread.yield();
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    final long[] next = new long[producers];
+    final Object[] batch = new Object[16];
+    for (int received = 0; received < producers * perProducer; ) {
+      final int count = buffer.drainTo(batch);
+      if (count == 0) {
+        Thread.yield();
+      }
+      for (int i = 0; i < count; i++) {
+        final long[] element = (long[]) batch[i];
+        assertEquals(next[(int) element[0]]++, element[1]);
+      }
+      received += count;
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, buffer.depth());
+  }
+}